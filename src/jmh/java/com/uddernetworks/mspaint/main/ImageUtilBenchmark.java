@@ -0,0 +1,125 @@
+package com.uddernetworks.mspaint.main;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link ImageUtil} against the per-pixel getRGB/setRGB approach it used to take, on 4K (3840 x 2160) images.
+ * Run with <code>gradle jmh</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ImageUtilBenchmark {
+
+    private static final int WIDTH = 3840;
+    private static final int HEIGHT = 2160;
+
+    private BufferedImage image1;
+    private BufferedImage image2;
+    private List<Point> ignoring;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        image1 = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        image2 = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int color = random.nextInt(8) == 0 ? 0xFF000000 : 0xFFFFFFFF;
+                image1.setRGB(x, y, color);
+                image2.setRGB(x, y, color);
+            }
+        }
+
+        ignoring = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            ignoring.add(new Point(random.nextInt(WIDTH), random.nextInt(HEIGHT)));
+        }
+    }
+
+    @Benchmark
+    public BufferedImage blackAndWhite() {
+        return ImageUtil.blackAndWhite(image1);
+    }
+
+    @Benchmark
+    public BufferedImage blackAndWhitePerPixel() {
+        BufferedImage wImage = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                Color col = new Color(image1.getRGB(x, y), true);
+                boolean black = ImageUtil.shouldBeBlack(col.getRed(), col.getGreen(), col.getBlue());
+                wImage.setRGB(x, y, black ? new Color(0, 0, 0, col.getAlpha()).getRGB() : new Color(255, 255, 255, col.getAlpha()).getRGB());
+            }
+        }
+
+        return wImage;
+    }
+
+    @Benchmark
+    public boolean equalsIgnoring() {
+        return ImageUtil.equals(image1, image2, ignoring);
+    }
+
+    @Benchmark
+    public boolean equalsIgnoringPerPixel() {
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int finalX = x;
+                int finalY = y;
+                if (ignoring.stream().noneMatch(point -> point.getX() == finalX && point.getY() == finalY)
+                        && image1.getRGB(x, y) != image2.getRGB(x, y)) return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Benchmark
+    public double getDifferenceBetween() {
+        return ImageUtil.getDifferenceBetween(image1, image2);
+    }
+
+    @Benchmark
+    public double getDifferenceBetweenPerPixel() {
+        double same = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                if (image1.getRGB(x, y) == image2.getRGB(x, y)) same++;
+            }
+        }
+
+        return same / (WIDTH * HEIGHT);
+    }
+
+    @Benchmark
+    public int getWidth() {
+        return ImageUtil.getWidth(image1);
+    }
+
+    @Benchmark
+    public int getWidthPerPixel() {
+        int width = 0;
+        for (int x = 0; x < WIDTH; x++) {
+            boolean hasBlack = false;
+            for (int y = 0; y < HEIGHT; y++) {
+                if (image1.getRGB(x, y) == 0xFFFFFFFF) hasBlack = true;
+            }
+
+            if (hasBlack) width++;
+        }
+
+        return width;
+    }
+}
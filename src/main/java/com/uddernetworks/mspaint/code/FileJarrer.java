@@ -1,17 +1,53 @@
 package com.uddernetworks.mspaint.code;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
+/**
+ * Packages a directory into a jar. Every file is hashed in parallel on a bounded pool first, and the hashes are
+ * saved in the jar as {@link #HASHES_ENTRY}. If the jar on disk already has the same hashes it isn't packaged again.
+ * Otherwise the files are streamed one at a time through a large buffer into a {@link JarOutputStream}, which is
+ * written to a temporary file and moved over the jar once it's done. Files that are already compressed, such as images
+ * and archives, are stored as they are, using the CRC worked out while hashing them.
+ */
 public class FileJarrer {
 
-    private List<String> fileList = new ArrayList<>();
+    private static Logger LOGGER = LoggerFactory.getLogger(FileJarrer.class);
+
+    /**
+     * The jar entry holding the SHA-256 hash of every other entry, one <code>hash name</code> line per entry.
+     */
+    public static final String HASHES_ENTRY = "META-INF/MSPAINT-IDE.HASHES";
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "png", "jpg", "jpeg", "gif", "webp", "zip", "jar", "gz", "bz2", "xz", "7z", "mp3", "ogg", "mp4"));
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final ExecutorService executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "Jar Packager " + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
 
     private File sourceFile;
     private File outFile;
@@ -21,49 +57,174 @@ public class FileJarrer {
         this.outFile = outFile;
     }
 
-    private void zipIt(String zipFile) {
-        byte[] buffer = new byte[1024];
-        try (JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(zipFile))) {
+    public void jarDirectory() {
+        try {
+            long start = System.currentTimeMillis();
 
-            for (String file : this.fileList) {
-                JarEntry jarEntry = new JarEntry(file.replace("\\", "/"));
-                jarOutputStream.putNextEntry(jarEntry);
+            List<Entry> entries = hashEntries(getFiles());
 
-                try (FileInputStream in = new FileInputStream(sourceFile.getAbsolutePath() + File.separator + file)) {
-                    int len;
-                    while ((len = in.read(buffer)) > 0) {
-                        jarOutputStream.write(buffer, 0, len);
-                    }
-                }
+            String hashes = entries.stream().map(entry -> entry.hash + " " + entry.name + "\n").collect(Collectors.joining());
+            if (hashes.equals(getExistingHashes())) {
+                LOGGER.info("Jar inputs are unchanged, skipping packaging");
+                return;
             }
 
-            jarOutputStream.closeEntry();
-        } catch (IOException ex) {
-            ex.printStackTrace();
+            writeJar(entries, hashes);
+
+            LOGGER.info("Packaged " + entries.size() + " entries in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (IOException e) {
+            LOGGER.error("Couldn't package jar " + this.outFile.getAbsolutePath(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<Path> getFiles() throws IOException {
+        Path sourcePath = this.sourceFile.toPath();
+        Path hashesPath = sourcePath.resolve(HASHES_ENTRY);
+        try (Stream<Path> paths = Files.walk(sourcePath)) {
+            return paths.filter(Files::isRegularFile).filter(path -> !path.equals(hashesPath)).sorted().collect(Collectors.toList());
         }
     }
 
-    private void genFileList(File node) {
-        if (node.isFile()) {
-            fileList.add(generateZipEntry(node.getAbsoluteFile().toString()));
+    /**
+     * Hashes the given files in parallel. Only each file's hashes are kept, so memory use doesn't grow with the size of
+     * the files.
+     *
+     * @param files The files to hash
+     * @return The entries of the files, in the same order
+     * @throws IOException If an IO Exception occurs
+     * @throws InterruptedException If the thread is interrupted while waiting for the hashes
+     */
+    private List<Entry> hashEntries(List<Path> files) throws IOException, InterruptedException {
+        Path sourcePath = this.sourceFile.toPath();
+
+        List<Future<Entry>> futures = new ArrayList<>(files.size());
+        for (Path file : files) {
+            futures.add(executor.submit(() -> hash(sourcePath, file)));
         }
 
-        if (node.isDirectory()) {
-            String[] subNote = node.list();
-            for (String filename : subNote) {
-                genFileList(new File(node, filename));
+        List<Entry> entries = new ArrayList<>(files.size());
+        try {
+            for (Future<Entry> future : futures) {
+                entries.add(future.get());
             }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException) e.getCause()).getCause();
+            throw new IOException(e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(true));
         }
 
+        return entries;
     }
 
-    private String generateZipEntry(String file) {
-        return file.substring(sourceFile.getAbsolutePath().length() + 1, file.length());
+    private static Entry hash(Path sourcePath, Path file) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long size = 0;
+
+            try (InputStream in = Files.newInputStream(file)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                    crc.update(buffer, 0, read);
+                    size += read;
+                }
+            }
+
+            Entry entry = new Entry();
+            entry.path = file;
+            entry.name = sourcePath.relativize(file).toString().replace("\\", "/");
+            entry.hash = toHex(digest.digest());
+            entry.crc = crc.getValue();
+            entry.size = size;
+            entry.modified = Files.getLastModifiedTime(file).toMillis();
+            return entry;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
-    public void jarDirectory() {
-        genFileList(sourceFile);
-        zipIt(outFile.getAbsolutePath());
+    private void writeJar(List<Entry> entries, String hashes) throws IOException {
+        File parent = this.outFile.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        Path tempFile = Files.createTempFile(parent.toPath(), this.outFile.getName(), ".tmp");
+
+        try (JarOutputStream out = new JarOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), BUFFER_SIZE))) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+
+            for (Entry entry : entries) {
+                JarEntry jarEntry = new JarEntry(entry.name);
+                jarEntry.setTime(entry.modified);
+
+                String extension = entry.name.substring(entry.name.lastIndexOf('.') + 1).toLowerCase();
+                if (COMPRESSED_EXTENSIONS.contains(extension) || entry.size == 0) {
+                    // Stored entries need their size and CRC up front, and the stream checks them against the data
+                    jarEntry.setMethod(ZipEntry.STORED);
+                    jarEntry.setSize(entry.size);
+                    jarEntry.setCompressedSize(entry.size);
+                    jarEntry.setCrc(entry.crc);
+                }
+
+                out.putNextEntry(jarEntry);
+                try (InputStream in = Files.newInputStream(entry.path)) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+                }
+
+                out.closeEntry();
+            }
+
+            out.putNextEntry(new JarEntry(HASHES_ENTRY));
+            out.write(hashes.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+
+        Files.move(tempFile, this.outFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
     }
 
+    private String getExistingHashes() {
+        if (!this.outFile.isFile()) return null;
+
+        try (ZipFile zipFile = new ZipFile(this.outFile)) {
+            ZipEntry entry = zipFile.getEntry(HASHES_ENTRY);
+            if (entry == null) return null;
+
+            try (InputStream in = zipFile.getInputStream(entry)) {
+                ByteArrayOutputStream hashes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) hashes.write(buffer, 0, read);
+                return new String(hashes.toByteArray(), StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte value : bytes) {
+            hex.append(Character.forDigit((value >> 4) & 0xF, 16)).append(Character.forDigit(value & 0xF, 16));
+        }
+
+        return hex.toString();
+    }
+
+    private static class Entry {
+        private Path path;
+        private String name;
+        private String hash;
+        private long crc;
+        private long size;
+        private long modified;
+    }
 }
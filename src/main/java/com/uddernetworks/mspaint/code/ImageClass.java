@@ -1,5 +1,6 @@
 package com.uddernetworks.mspaint.code;
 
+import com.uddernetworks.mspaint.code.languages.Language;
 import com.uddernetworks.mspaint.code.languages.LanguageHighlighter;
 import com.uddernetworks.mspaint.main.*;
 import com.uddernetworks.mspaint.ocr.ImageCompare;
@@ -50,7 +51,23 @@ public class ImageClass {
     }
 
     public void scan(boolean internal, boolean useCaches, boolean saveCaches) {
-        File cacheFile = CacheUtils.getCacheFor(this.inputImage, internal);
+        // The image is only decoded here to find its cache, so without caches only the OCR decodes it
+        scan(useCaches || saveCaches ? CacheUtils.readImage(this.inputImage) : null, internal, useCaches, saveCaches);
+    }
+
+    /**
+     * Scans the image using its already decoded pixels to find its cache and to keep as the cached scan's original
+     * image, so the file isn't decoded again when the cache is used. On a cache miss the OCR still reads and decodes
+     * the file itself, as it can only scan files.
+     *
+     * @param image The decoded image file, or null if it couldn't be read
+     */
+    public void scan(BufferedImage image) {
+        scan(image, this.internal, this.useCaches, this.saveCaches);
+    }
+
+    private void scan(BufferedImage image, boolean internal, boolean useCaches, boolean saveCaches) {
+        File cacheFile = CacheUtils.resolveCacheFor(this.inputImage, image, internal);
         LOGGER.info("Scanning image " + inputImage.getName() + "...");
         final String prefix = "[" + inputImage.getName() + "] ";
 
@@ -58,13 +75,11 @@ public class ImageClass {
 
         ImageCompare imageCompare = new ImageCompare();
 
-        ModifiedDetector modifiedDetector = new ModifiedDetector(inputImage, cacheFile);
-
         if (this.headlessMain == null) {
             this.headlessMain = mainGUI.getMain();
         }
 
-        scannedImage = imageCompare.getText(inputImage, cacheFile, mainGUI, this.headlessMain, !modifiedDetector.imageChanged() && useCaches, saveCaches);
+        scannedImage = imageCompare.getText(inputImage, image, cacheFile, mainGUI, this.headlessMain, useCaches, saveCaches);
 
         text = scannedImage.getPrettyString();
 
@@ -73,7 +88,7 @@ public class ImageClass {
         LOGGER.info(prefix + "Finished scan in " + (System.currentTimeMillis() - start) + "ms");
     }
 
-    public void highlight(File highlightImagePath) throws IOException {
+    public void highlight(File highlightImagePath, Language language) throws IOException {
         this.highlightedFile = new File(highlightImagePath, inputImage.getName().substring(0, inputImage.getName().length() - 4) + "_highlighted.png");
 
         final String prefix = "[" + inputImage.getName() + "] ";
@@ -81,18 +96,27 @@ public class ImageClass {
         LOGGER.info(prefix + "Highlighting...");
         long start = System.currentTimeMillis();
 
-        new LanguageHighlighter().highlight(this.mainGUI.getCurrentLanguage().getLanguageHighlighter(), this.scannedImage);
+        new LanguageHighlighter().highlight(language.getLanguageHighlighter(), this.scannedImage);
 
         LOGGER.info(prefix + "Finished highlighting in " + (System.currentTimeMillis() - start) + "ms");
 
-        LOGGER.info(prefix + "Writing highlighted image to file...");
+        LOGGER.info(prefix + "Rendering highlighted image...");
         start = System.currentTimeMillis();
 
-
         letterFileWriter = new LetterFileWriter(scannedImage, inputImage, highlightedFile);
-        letterFileWriter.writeToFile();
+        letterFileWriter.queueWriteToFile();
 
-        LOGGER.info(prefix + "Finished writing to file in " + (System.currentTimeMillis() - start) + "ms");
+        LOGGER.info(prefix + "Finished rendering in " + (System.currentTimeMillis() - start) + "ms, queued for writing");
+    }
+
+    /**
+     * Replaces the scan results of the image, such as after only part of it has been rescanned.
+     *
+     * @param scannedImage The new {@link ScannedImage}
+     */
+    public void setScannedImage(ScannedImage scannedImage) {
+        this.scannedImage = scannedImage;
+        this.text = scannedImage.getPrettyString();
     }
 
     public BufferedImage getImage() {
@@ -122,4 +146,12 @@ public class ImageClass {
     public Main getHeadlessMain() {
         return headlessMain;
     }
+
+    public boolean isInternal() {
+        return internal;
+    }
+
+    public boolean isSaveCaches() {
+        return saveCaches;
+    }
 }
@@ -0,0 +1,112 @@
+package com.uddernetworks.mspaint.code;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Mirrors a project's other files into its class output folder so they get packaged with the classes. Only files that
+ * are new or whose size or contents changed since they were last staged are touched, and staged files that no longer
+ * exist are removed. Files are hard linked where the filesystem allows it, and otherwise copied with their attributes so
+ * the next sync can tell they're unchanged without reading them.
+ */
+public class ResourceStager {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(ResourceStager.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Path stagedDestination;
+    private Set<Path> staged = new HashSet<>();
+    private boolean linksSupported = true;
+
+    /**
+     * Syncs the given file or folder into the given destination folder.
+     *
+     * @param source The file or folder to stage
+     * @param destination The folder to stage the files into
+     * @throws IOException If an IO Exception occurs
+     */
+    public synchronized void stage(File source, File destination) throws IOException {
+        long start = System.currentTimeMillis();
+        Path sourcePath = source.toPath();
+        Path destinationPath = destination.toPath();
+
+        List<Path> files;
+        if (source.isDirectory()) {
+            try (Stream<Path> paths = Files.walk(sourcePath)) {
+                files = paths.filter(Files::isRegularFile).map(sourcePath::relativize).collect(Collectors.toList());
+            }
+        } else {
+            sourcePath = sourcePath.toAbsolutePath().getParent();
+            files = source.isFile() ? List.of(source.toPath().getFileName()) : List.of();
+        }
+
+        Set<Path> current = new HashSet<>(files);
+        if (destinationPath.equals(this.stagedDestination)) {
+            for (Path removed : this.staged) {
+                if (!current.contains(removed)) Files.deleteIfExists(destinationPath.resolve(removed));
+            }
+        }
+
+        int updated = 0;
+        for (Path relative : files) {
+            if (stageFile(sourcePath.resolve(relative), destinationPath.resolve(relative))) updated++;
+        }
+
+        this.stagedDestination = destinationPath;
+        this.staged = current;
+        LOGGER.info("Staged " + updated + " of " + files.size() + " other files in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private boolean stageFile(Path source, Path target) throws IOException {
+        if (Files.isRegularFile(target) && Files.size(source) == Files.size(target)) {
+            if (Files.getLastModifiedTime(source).equals(Files.getLastModifiedTime(target))) return false;
+            if (Files.isSameFile(source, target) || sameContents(source, target)) return false;
+        }
+
+        Files.createDirectories(target.getParent());
+
+        if (this.linksSupported) {
+            try {
+                Files.deleteIfExists(target);
+                Files.createLink(target, source);
+                return true;
+            } catch (IOException | UnsupportedOperationException e) {
+                // Different volumes or filesystems without hard links, so everything is copied from now on
+                LOGGER.info("Couldn't hard link other files, copying them instead");
+                this.linksSupported = false;
+            }
+        }
+
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        return true;
+    }
+
+    private boolean sameContents(Path first, Path second) throws IOException {
+        try (InputStream firstIn = Files.newInputStream(first); InputStream secondIn = Files.newInputStream(second)) {
+            byte[] firstBuffer = new byte[BUFFER_SIZE];
+            byte[] secondBuffer = new byte[BUFFER_SIZE];
+
+            int read;
+            while ((read = firstIn.readNBytes(firstBuffer, 0, BUFFER_SIZE)) > 0) {
+                if (secondIn.readNBytes(secondBuffer, 0, read) != read) return false;
+                if (!Arrays.equals(firstBuffer, 0, read, secondBuffer, 0, read)) return false;
+            }
+
+            return secondIn.read() == -1;
+        }
+    }
+}
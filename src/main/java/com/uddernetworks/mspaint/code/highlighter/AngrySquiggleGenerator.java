@@ -1,34 +1,99 @@
 package com.uddernetworks.mspaint.code.highlighter;
 
+import com.uddernetworks.mspaint.main.Environment;
+import com.uddernetworks.mspaint.main.PNGWriter;
+import com.uddernetworks.mspaint.settings.Setting;
+import com.uddernetworks.mspaint.settings.SettingsManager;
 import org.apache.batik.transcoder.TranscoderException;
 import org.apache.batik.transcoder.TranscoderInput;
 import org.apache.batik.transcoder.image.PNGTranscoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AngrySquiggleGenerator {
 
     private static Logger LOGGER = LoggerFactory.getLogger(AngrySquiggleGenerator.class);
 
-    private BufferedImage generatedPNG;
+    private static final File SQUIGGLE_CACHE = new File(Environment.APP_DATA, "squiggle_cache");
+    private static final Map<Integer, BufferedImage> squiggles = new ConcurrentHashMap<>();
+    private static String svgHash;
 
-    public AngrySquiggleGenerator(int fontSize) throws TranscoderException {
-        double squiggleHeight = fontSize / 3D;
-        squiggleHeight /= 2;
+    /**
+     * Gets the angry squiggle for the given font size. Squiggles are cached for the lifetime of the process by their
+     * pixel height, and if {@link Setting#SQUIGGLE_DISK_CACHE} is enabled they are also saved to disk, so the SVG is
+     * only transcoded once per height per installation. The returned image is shared and must not be modified.
+     *
+     * @param fontSize The font size in pixels of the text the squiggle goes under
+     * @return The angry squiggle
+     * @throws TranscoderException If the SVG couldn't be transcoded
+     */
+    public static BufferedImage getSquiggle(int fontSize) throws TranscoderException {
+        int squiggleHeight = getSquiggleHeight(fontSize);
+        BufferedImage squiggle = squiggles.get(squiggleHeight);
+        if (squiggle != null) return squiggle;
 
+        synchronized (squiggles) {
+            squiggle = squiggles.get(squiggleHeight);
+            if (squiggle != null) return squiggle;
+
+            boolean diskCache = SettingsManager.getSetting(Setting.SQUIGGLE_DISK_CACHE, Boolean.class, true);
+            File cacheFile = diskCache ? getCacheFile(squiggleHeight) : null;
+
+            if (cacheFile != null && cacheFile.isFile()) {
+                try {
+                    squiggle = ImageIO.read(cacheFile);
+                } catch (IOException e) {
+                    LOGGER.error("Couldn't read cached angry squiggle " + cacheFile.getAbsolutePath(), e);
+                }
+            }
+
+            if (squiggle == null) {
+                squiggle = transcode(squiggleHeight);
+                if (cacheFile != null) PNGWriter.write(squiggle, cacheFile);
+            }
+
+            squiggles.put(squiggleHeight, squiggle);
+            return squiggle;
+        }
+    }
+
+    private static BufferedImage transcode(int squiggleHeight) throws TranscoderException {
         AngrySquiggleTranscoder transcoder = new AngrySquiggleTranscoder();
-        transcoder.addTranscodingHint(PNGTranscoder.KEY_HEIGHT, (float) (int) Math.floor(squiggleHeight));
+        transcoder.addTranscodingHint(PNGTranscoder.KEY_HEIGHT, (float) squiggleHeight);
 
-        TranscoderInput input = new TranscoderInput(getClass().getClassLoader().getResourceAsStream("angry_squiggle.svg"));
+        TranscoderInput input = new TranscoderInput(AngrySquiggleGenerator.class.getClassLoader().getResourceAsStream("angry_squiggle.svg"));
         transcoder.transcode(input, new AngrySquiggleTranscoderOutput());
-        this.generatedPNG = transcoder.getImage();
+        BufferedImage generated = transcoder.getImage();
+
+        LOGGER.info("Generated angry squiggle from SVG. Dimensions: " + generated.getWidth() + " x " + generated.getHeight());
+        return generated;
+    }
 
-        LOGGER.info("Generated angry squiggle from SVG. Dimensions: " + this.generatedPNG.getWidth() + " x " + this.generatedPNG.getHeight());
+    private static int getSquiggleHeight(int fontSize) {
+        return (int) Math.floor(fontSize / 3D / 2);
     }
 
-    public BufferedImage getGeneratedPNG() {
-        return generatedPNG;
+    private static File getCacheFile(int squiggleHeight) {
+        if (svgHash == null) {
+            // Squiggles saved from a different SVG are never used
+            try (InputStream svg = AngrySquiggleGenerator.class.getClassLoader().getResourceAsStream("angry_squiggle.svg")) {
+                if (svg == null) return null;
+                svgHash = Integer.toHexString(Arrays.hashCode(svg.readAllBytes()));
+            } catch (IOException e) {
+                LOGGER.error("Couldn't read angry squiggle SVG", e);
+                return null;
+            }
+        }
+
+        return new File(SQUIGGLE_CACHE, "squiggle_" + svgHash + "_" + squiggleHeight + ".png");
     }
 }
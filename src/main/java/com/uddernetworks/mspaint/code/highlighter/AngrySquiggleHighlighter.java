@@ -3,13 +3,13 @@ package com.uddernetworks.mspaint.code.highlighter;
 import com.uddernetworks.mspaint.code.ImageClass;
 import com.uddernetworks.mspaint.code.languages.LanguageError;
 import com.uddernetworks.mspaint.main.Main;
+import com.uddernetworks.mspaint.main.PNGWriter;
+import com.uddernetworks.mspaint.ocr.FontSizeCache;
 import com.uddernetworks.newocr.ScannedImage;
 import com.uddernetworks.newocr.character.ImageLetter;
 import com.uddernetworks.newocr.utils.ConversionUtils;
 import org.apache.batik.transcoder.TranscoderException;
 
-import javax.imageio.ImageIO;
-import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
@@ -44,21 +44,31 @@ public class AngrySquiggleHighlighter {
 
             getLineAndLength(lineNumber, columnNumber);
         }
+
+        // Every squiggle is drawn in memory first, so the image is only encoded once no matter how many errors it has
+        if (!errors.isEmpty()) PNGWriter.write(image, highlightedFile);
     }
 
-    private void drawAngrySquiggle(int squiggleX, int squiggleY, int length) throws IOException {
-        for (int y = squiggleY; y < squiggleImage.getHeight() + squiggleY; y++) {
-            for (int x = squiggleX; x < squiggleX + length; x++) {
-                int squiggleImageX = (x - squiggleX) % squiggleImage.getWidth();
-                int squiggleImageY = y - squiggleY;
+    private void drawAngrySquiggle(int squiggleX, int squiggleY, int length) {
+        int squiggleWidth = squiggleImage.getWidth();
+        int[] squiggleRow = new int[squiggleWidth];
+
+        int startX = Math.max(0, squiggleX);
+        int endX = Math.min(image.getWidth(), squiggleX + length);
+        if (endX <= startX) return;
+        int[] row = new int[endX - startX];
 
-                Color squiggleColor = new Color(squiggleImage.getRGB(squiggleImageX, squiggleImageY), true);
+        for (int y = Math.max(0, squiggleY); y < Math.min(image.getHeight(), squiggleImage.getHeight() + squiggleY); y++) {
+            squiggleImage.getRGB(0, y - squiggleY, squiggleWidth, 1, squiggleRow, 0, squiggleWidth);
+            image.getRGB(startX, y, row.length, 1, row, 0, row.length);
 
-                if (squiggleColor.getAlpha() == 255) image.setRGB(x, y, squiggleColor.getRGB());
+            for (int x = startX; x < endX; x++) {
+                int squigglePixel = squiggleRow[(x - squiggleX) % squiggleWidth];
+                if (squigglePixel >>> 24 == 255) row[x - startX] = squigglePixel;
             }
-        }
 
-        ImageIO.write(image, "png", highlightedFile);
+            image.setRGB(startX, y, row.length, 1, row, 0, row.length);
+        }
     }
 
 
@@ -66,7 +76,6 @@ public class AngrySquiggleHighlighter {
         int xIndex;
         int yIndex;
         int length;
-        int fontSize;
 
         List<ImageLetter> line = this.scannedImage.getLine(lineNumber);
         ImageLetter first = line.get(0);
@@ -76,27 +85,23 @@ public class AngrySquiggleHighlighter {
             calcXY = first;
 
             length = last.getX() + last.getWidth() - first.getX();
-
-            fontSize = this.main.getOCRHandle().getFontSize(first).get();
         } else {
-            ImageLetter columnLetter = line.get(columnNumber - 1); // Need to get BEFORE
-            calcXY = columnLetter;
-            length = columnLetter.getWidth();
-
-            fontSize = this.main.getOCRHandle().getFontSize(columnLetter).get();
+            calcXY = line.get(columnNumber - 1); // Need to get BEFORE
+            length = calcXY.getWidth();
         }
 
         xIndex = calcXY.getX() + calcXY.getWidth();
         yIndex = calcXY.getY() + calcXY.getHeight();
 
-        fontSize = ConversionUtils.pointToPixel(fontSize); // fontSize is now in pixels
-
         xIndex -= extraSquigglePadding;
         length = length + extraSquigglePadding * 2;
 
+        // The font size is only needed to size the squiggle, which is the same for every error in the image
         if (this.squiggleImage == null) {
-            AngrySquiggleGenerator angrySquiggleGenerator = new AngrySquiggleGenerator(fontSize);
-            this.squiggleImage = angrySquiggleGenerator.getGeneratedPNG();
+            int fontSize = FontSizeCache.getFontSize(this.main.getOCRHandle(), calcXY);
+            fontSize = ConversionUtils.pointToPixel(fontSize); // fontSize is now in pixels
+
+            this.squiggleImage = AngrySquiggleGenerator.getSquiggle(fontSize);
         }
 
         length = getRoundedSquiggleLength(length);
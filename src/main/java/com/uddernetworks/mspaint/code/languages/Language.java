@@ -53,12 +53,21 @@ public interface Language {
      * @param outputFile The packaged output file, if required
      * @param otherFiles The directory or single file in which to put in the output file
      * @param classOutputFolder The folder to be used to compile individual files. E.g. a folder to hold all the .class files of a Java project
-     * @param mainGUI The main instance of MainGUI
-     * @param imageOutputStream The ImageOutputStream that is used for all executed program output
+     * @param mainGUI The main instance of MainGUI, or null if the language shouldn't show its status
+     * @param imageOutputStream The ImageOutputStream that is used for all executed program output. {@link System#out} is
+     * already sent to it on the calling thread by {@link com.uddernetworks.mspaint.imagestreams.OutputRouter}, so
+     * languages shouldn't replace it
      * @param compilerStream The ImageOutputStream that is used for all compilation-related output
      * @param libs The containing folder or file to be used as libraries for the program
      * @param execute If the program should be executed along with compiling (Or interpreting) and packaging the jar
      * @throws IOException If an IO Exception occurs
      */
     Map<ImageClass, List<LanguageError>> compileAndExecute(List<ImageClass> imageClasses, File outputFile, File otherFiles, File classOutputFolder, MainGUI mainGUI, ImageOutputStream imageOutputStream, ImageOutputStream compilerStream, List<File> libs, boolean execute) throws IOException;
+
+    /**
+     * Waits for anything the language finishes in the background after compiling, such as exporting class files and
+     * packaging the output file. Nothing needs to be waited for by default.
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    default void awaitExport() throws InterruptedException {}
 }
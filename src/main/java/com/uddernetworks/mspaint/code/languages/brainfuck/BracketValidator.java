@@ -0,0 +1,72 @@
+package com.uddernetworks.mspaint.code.languages.brainfuck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds every unmatched bracket in Brainfuck code in a single pass. Open brackets are pushed onto a stack of their
+ * indices and popped by the closing bracket that matches them, so anything left on the stack at the end, and any
+ * closing bracket seen with an empty stack, is unmatched. Positions are found from an index of where each line starts.
+ */
+public class BracketValidator {
+
+    /**
+     * Validates the brackets of the given code.
+     *
+     * @param code The Brainfuck code
+     * @param source The name of the file the code is from
+     * @return A {@link BrainfuckError} for every unmatched bracket in the order they appear, with 1-based positions
+     */
+    public static List<BrainfuckError> validate(String code, String source) {
+        char[] chars = code.toCharArray();
+        int[] openBrackets = new int[16];
+        int depth = 0;
+        List<Integer> unmatched = new ArrayList<>();
+
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] == '[') {
+                if (depth == openBrackets.length) openBrackets = Arrays.copyOf(openBrackets, depth * 2);
+                openBrackets[depth++] = i;
+            } else if (chars[i] == ']') {
+                if (depth == 0) {
+                    unmatched.add(i);
+                } else {
+                    depth--;
+                }
+            }
+        }
+
+        for (int i = 0; i < depth; i++) {
+            unmatched.add(openBrackets[i]);
+        }
+
+        if (unmatched.isEmpty()) return List.of();
+
+        unmatched.sort(Integer::compare);
+        int[] lineStarts = getLineStarts(chars);
+
+        List<BrainfuckError> errors = new ArrayList<>(unmatched.size());
+        for (int index : unmatched) {
+            int line = Arrays.binarySearch(lineStarts, index);
+            if (line < 0) line = -line - 2;
+
+            errors.add(new BrainfuckError(line + 1, index - lineStarts[line] + 1, source, "Nothing to match " + chars[index]));
+        }
+
+        return errors;
+    }
+
+    private static int[] getLineStarts(char[] chars) {
+        int[] lineStarts = new int[16];
+        int lines = 1;
+
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] != '\n') continue;
+            if (lines == lineStarts.length) lineStarts = Arrays.copyOf(lineStarts, lines * 2);
+            lineStarts[lines++] = i + 1;
+        }
+
+        return Arrays.copyOf(lineStarts, lines);
+    }
+}
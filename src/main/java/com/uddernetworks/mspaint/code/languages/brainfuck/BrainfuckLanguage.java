@@ -11,7 +11,7 @@ import java.awt.*;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -52,47 +52,41 @@ public class BrainfuckLanguage implements Language {
     public Map<ImageClass, List<LanguageError>> compileAndExecute(List<ImageClass> imageClasses, File outputFile, File otherFiles, File classOutputFolder, MainGUI mainGUI, ImageOutputStream imageOutputStream, ImageOutputStream compilerStream, List<File> libs, boolean execute) throws IOException {
         Map<ImageClass, List<LanguageError>> errors = new HashMap<>();
 
-        PrintStream imageOut = new PrintStream(imageOutputStream);
-        PrintStream compilerOut = new PrintStream(compilerStream);
+        PrintStream compilerOut = compilerStream.getPrintStream();
         compilerStream.changeColor(Color.RED);
 
         for (ImageClass imageClass : imageClasses) {
             long start = System.currentTimeMillis();
 
-            PrintStream oldPS = System.out;
-            System.setOut(imageOut);
-
             String code = imageClass.getText();
 
             compilerOut.println("Checking code...");
-            mainGUI.setStatusText("Checking code...");
-
-            MultiLineBlock multiLineBlock = new MultiLineBlock(code);
+            if (mainGUI != null) mainGUI.setStatusText("Checking code...");
 
-            String error = check(multiLineBlock);
+            String name = imageClass.getInputImage().getName();
+            List<BrainfuckError> bracketErrors = BracketValidator.validate(code, name);
 
-            if (error != null) {
-                errors.put(imageClass, Collections.singletonList(new BrainfuckError(multiLineBlock.getLine() + 1, multiLineBlock.getCharacter() + 1, imageClass.getInputImage().getName(), error)));
+            if (!bracketErrors.isEmpty()) {
+                errors.put(imageClass, new ArrayList<>(bracketErrors));
 
-                compilerOut.println("Error on " + imageClass.getInputImage().getName() + " [" + multiLineBlock.getLine() + ":" + multiLineBlock.getCharacter() + "] " + error);
+                for (BrainfuckError error : bracketErrors) {
+                    compilerOut.println("Error on " + name + " [" + error.getLineNumber() + ":" + error.getColumnNumber() + "] " + error.getMessage());
+                }
 
                 compilerOut.println("Completed in " + (System.currentTimeMillis() - start));
 
-                System.setOut(oldPS);
                 return errors;
             }
 
             compilerOut.println("Executing...");
-            mainGUI.setStatusText("Executing...");
+            if (mainGUI != null) mainGUI.setStatusText("Executing...");
 
             start = System.currentTimeMillis();
 
             execute(code);
 
-            System.setOut(oldPS);
-
             compilerOut.println("Executed in " + (System.currentTimeMillis() - start) + "ms");
-            mainGUI.setStatusText("");
+            if (mainGUI != null) mainGUI.setStatusText("");
         }
 
         return errors;
@@ -108,92 +102,7 @@ public class BrainfuckLanguage implements Language {
         if (parts.length == 1) return;
 
         String input = parts[parts.length - 1].split("\n")[0].trim();
-        int lastInput = 0;
-
-        final int LENGTH = 65535;
-        byte[] mem = new byte[LENGTH];
-        int dataPointer = 0;
-
-        int l = 0;
-        for (int i = 0; i < code.length(); i++) {
-            switch (code.charAt(i)) {
-                case '>':
-                    dataPointer = (dataPointer == LENGTH - 1) ? 0 : dataPointer + 1;
-                    break;
-                case '<':
-                    dataPointer = (dataPointer == 0) ? LENGTH - 1 : dataPointer - 1;
-                    break;
-                case '+':
-                    mem[dataPointer]++;
-                    break;
-                case '-':
-                    mem[dataPointer]--;
-                    break;
-                case '.':
-                    if (mem[dataPointer] != 0) System.out.print((char) mem[dataPointer]);
-                    break;
-                case ',':
-                    mem[dataPointer] = (byte) (input.length() <= lastInput ? 0 : input.charAt(lastInput++));
-                    break;
-                case '[':
-                    if (mem[dataPointer] == 0) {
-                        i++;
-                        while (l > 0 || code.charAt(i) != ']') {
-                            if (code.charAt(i) == '[') l++;
-                            if (code.charAt(i) == ']') l--;
-                            i++;
-                        }
-                    }
-                    break;
-                case ']':
-                    if (mem[dataPointer] != 0) {
-                        i--;
-                        while (l > 0 || code.charAt(i) != '[') {
-                            if (code.charAt(i) == ']') l++;
-                            if (code.charAt(i) == '[') l--;
-                            i--;
-                        }
-                        i--;
-                    }
-                    break;
-            }
-        }
-    }
 
-    private String check(MultiLineBlock multiLineBlock) {
-        int depth = 0;
-        int extDepth = 0;
-        int i = 0;
-        while (multiLineBlock.canContinue()) {
-            char current = multiLineBlock.getNext();
-            switch (current) {
-                case '[':
-                    i++;
-                    depth++;
-                    extDepth++;
-                    int tempI = i;
-                    while (depth > 0 || multiLineBlock.getCharAt(i - 1) != ']') {
-                        char curr = multiLineBlock.getCharAt(i);
-                        if (curr == '[') depth++;
-                        if (curr == ']') depth--;
-                        i++;
-
-                        if (i >= multiLineBlock.length()) return "Nothing to match [";
-                    }
-                    i = tempI - 1;
-                    break;
-                case ']':
-                    if (extDepth == 0) {
-                        return "Nothing to match ]";
-                    } else {
-                        extDepth--;
-                    }
-                    break;
-            }
-
-            i++;
-        }
-
-        return null;
+        BrainfuckProgram.parse(code).run(input, System.out);
     }
 }
@@ -0,0 +1,154 @@
+package com.uddernetworks.mspaint.code.languages.brainfuck;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * A Brainfuck program parsed once into a compact list of instructions. Runs of <code>+</code>/<code>-</code> and
+ * <code>&gt;</code>/<code>&lt;</code> are folded into a single add or move, <code>[-]</code> and <code>[+]</code> become
+ * a single clear, and every bracket stores the index of its match so loops jump straight to it. Everything that isn't
+ * an instruction is dropped while parsing.
+ */
+public class BrainfuckProgram {
+
+    public static final int MEMORY_LENGTH = 65535;
+
+    private static final byte ADD = 0;
+    private static final byte MOVE = 1;
+    private static final byte OUTPUT = 2;
+    private static final byte INPUT = 3;
+    private static final byte JUMP_IF_ZERO = 4;
+    private static final byte JUMP_IF_NOT_ZERO = 5;
+    private static final byte CLEAR = 6;
+
+    private final byte[] ops;
+    private final int[] args;
+
+    private BrainfuckProgram(byte[] ops, int[] args) {
+        this.ops = ops;
+        this.args = args;
+    }
+
+    /**
+     * Parses the given code into a {@link BrainfuckProgram}. The brackets in the code must already be balanced.
+     *
+     * @param code The Brainfuck code
+     * @return The parsed program
+     * @throws IllegalArgumentException If the code has an unmatched bracket
+     */
+    public static BrainfuckProgram parse(String code) {
+        byte[] ops = new byte[code.length()];
+        int[] args = new int[code.length()];
+        int size = 0;
+        Deque<Integer> openBrackets = new ArrayDeque<>();
+
+        for (int i = 0; i < code.length(); i++) {
+            char current = code.charAt(i);
+            switch (current) {
+                case '+':
+                case '-':
+                    int delta = current == '+' ? 1 : -1;
+                    if (size > 0 && ops[size - 1] == ADD) {
+                        args[size - 1] += delta;
+                    } else {
+                        ops[size] = ADD;
+                        args[size++] = delta;
+                    }
+                    break;
+                case '>':
+                case '<':
+                    int offset = current == '>' ? 1 : -1;
+                    if (size > 0 && ops[size - 1] == MOVE) {
+                        args[size - 1] = Math.floorMod(args[size - 1] + offset, MEMORY_LENGTH);
+                    } else {
+                        ops[size] = MOVE;
+                        args[size++] = Math.floorMod(offset, MEMORY_LENGTH);
+                    }
+                    break;
+                case '.':
+                    ops[size++] = OUTPUT;
+                    break;
+                case ',':
+                    ops[size++] = INPUT;
+                    break;
+                case '[':
+                    openBrackets.push(size);
+                    ops[size++] = JUMP_IF_ZERO;
+                    break;
+                case ']':
+                    if (openBrackets.isEmpty()) throw new IllegalArgumentException("Nothing to match ] at index " + i);
+                    int open = openBrackets.pop();
+
+                    // [-] and [+] just set the cell to 0, however many times they would loop
+                    if (size - open == 2 && ops[open + 1] == ADD && (args[open + 1] & 1) != 0) {
+                        size = open;
+                        ops[size++] = CLEAR;
+                        break;
+                    }
+
+                    args[open] = size;
+                    ops[size] = JUMP_IF_NOT_ZERO;
+                    args[size++] = open;
+                    break;
+            }
+        }
+
+        if (!openBrackets.isEmpty()) throw new IllegalArgumentException("Nothing to match [");
+
+        return new BrainfuckProgram(Arrays.copyOf(ops, size), Arrays.copyOf(args, size));
+    }
+
+    /**
+     * Runs the program with fresh memory.
+     *
+     * @param input The characters read by <code>,</code>, after which it reads 0
+     * @param out The stream to print output to
+     */
+    public void run(String input, PrintStream out) {
+        final byte[] ops = this.ops;
+        final int[] args = this.args;
+        final int length = ops.length;
+
+        byte[] mem = new byte[MEMORY_LENGTH];
+        int dataPointer = 0;
+        int lastInput = 0;
+
+        for (int i = 0; i < length; i++) {
+            switch (ops[i]) {
+                case ADD:
+                    mem[dataPointer] += args[i];
+                    break;
+                case MOVE:
+                    dataPointer += args[i];
+                    if (dataPointer >= MEMORY_LENGTH) dataPointer -= MEMORY_LENGTH;
+                    break;
+                case OUTPUT:
+                    if (mem[dataPointer] != 0) out.print((char) mem[dataPointer]);
+                    break;
+                case INPUT:
+                    mem[dataPointer] = (byte) (input.length() <= lastInput ? 0 : input.charAt(lastInput++));
+                    break;
+                case JUMP_IF_ZERO:
+                    if (mem[dataPointer] == 0) i = args[i];
+                    break;
+                case JUMP_IF_NOT_ZERO:
+                    if (mem[dataPointer] != 0) i = args[i];
+                    break;
+                case CLEAR:
+                    mem[dataPointer] = 0;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Gets the amount of instructions the program was parsed into.
+     *
+     * @return The amount of instructions
+     */
+    public int size() {
+        return this.ops.length;
+    }
+}
@@ -2,8 +2,11 @@ package com.uddernetworks.mspaint.code.languages.java;
 
 import com.uddernetworks.mspaint.code.FileJarrer;
 import com.uddernetworks.mspaint.code.ImageClass;
+import com.uddernetworks.mspaint.code.ResourceStager;
 import com.uddernetworks.mspaint.imagestreams.ImageOutputStream;
 import com.uddernetworks.mspaint.main.MainGUI;
+import com.uddernetworks.mspaint.settings.Setting;
+import com.uddernetworks.mspaint.settings.SettingsManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,30 +15,49 @@ import java.awt.*;
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.net.MalformedURLException;
 import java.net.URI;
-import java.net.URL;
-import java.net.URLClassLoader;
 import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.*;
-
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class CodeCompiler {
 
     private static Logger LOGGER = LoggerFactory.getLogger(CodeCompiler.class);
 
-    private File classOutputFolder;
-    private Map<String, ImageClass> imageClassHashMap = new HashMap<>();
-    private Map<ImageClass, List<Diagnostic<? extends JavaFileObject>>> errors = new HashMap<>();
-    private List<URLClassLoader> classLoaders = new ArrayList<>();
+    // Kept per class output folder, so builds of different projects don't share any incremental state
+    private Map<File, JavaCompilerService> compilerServices = new ConcurrentHashMap<>();
+    private Map<File, ResourceStager> resourceStagers = new ConcurrentHashMap<>();
+    private Map<File, Set<String>> exportedClasses = new ConcurrentHashMap<>();
+    private ExecutorService exportExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Java Class Exporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static class MyDiagnosticListener implements DiagnosticListener<JavaFileObject> {
 
-    public class MyDiagnosticListener implements DiagnosticListener<JavaFileObject> {
+        private Map<String, ImageClass> imageClassHashMap;
+        private Map<ImageClass, List<Diagnostic<? extends JavaFileObject>>> errors;
+
+        public MyDiagnosticListener(Map<String, ImageClass> imageClassHashMap, Map<ImageClass, List<Diagnostic<? extends JavaFileObject>>> errors) {
+            this.imageClassHashMap = imageClassHashMap;
+            this.errors = errors;
+        }
 
         @Override
         public void report(Diagnostic<? extends JavaFileObject> diagnostic) {
+            if (diagnostic.getSource() == null) {
+                LOGGER.warn(diagnostic.getMessage(Locale.ENGLISH));
+                return;
+            }
+
             String packageName = diagnostic.getSource().getName().substring(1).replace("/", ".");
             packageName = packageName.substring(0, packageName.length() - 5);
 
@@ -56,7 +78,7 @@ public class CodeCompiler {
     public static class InMemoryJavaFileObject extends SimpleJavaFileObject {
         private String contents;
 
-        private InMemoryJavaFileObject(String className, String contents) {
+        InMemoryJavaFileObject(String className, String contents) {
             super(URI.create("string:///" + className.replace('.', '/')
                     + Kind.SOURCE.extension), Kind.SOURCE);
             this.contents = contents;
@@ -68,69 +90,34 @@ public class CodeCompiler {
         }
     }
 
-    private JavaFileObject getJavaFileObject(String code, String classPackage, String className) {
-        JavaFileObject so = null;
-        try {
-            so = new InMemoryJavaFileObject(classPackage + "." + className, code);
-        } catch (Exception exception) {
-            exception.printStackTrace();
-        }
-        return so;
-    }
-
-    private void compile(Iterable<? extends JavaFileObject> files, List<File> libs) {
-        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-
-        MyDiagnosticListener c = new MyDiagnosticListener();
-        StandardJavaFileManager fileManager = compiler.getStandardFileManager(c, Locale.ENGLISH, null);
-
-        List<String> options = new ArrayList<>(Arrays.asList("-d", classOutputFolder.getAbsolutePath()));
-
-        if (!libs.isEmpty()) {
-            options.add("-classpath");
-
-            libs.forEach(lib -> options.add(lib.getAbsolutePath()));
-        }
-
-        JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, c, options, null, files);
-        task.call();
-    }
-
-    private void runIt(List<URLClassLoader> classLoaders, File classOutputFolder, String classPackage, String className) {
+    private void runIt(Map<String, byte[]> classes, File otherFiles, String classPackage, String className) {
         try {
             System.out.println("Running main in " + classPackage + " in " + className);
-            classLoaders.add(new URLClassLoader(new URL[]{classOutputFolder.toURI().toURL()}));
+            ClassLoader classLoader = new MemoryClassLoader(classes, otherFiles, ClassLoader.getSystemClassLoader());
 
-            Class<?> thisClass = classLoaders.get(classLoaders.size() - 1).loadClass(classPackage.trim().isEmpty() ? className : classPackage + "." + className);
+            Class<?> thisClass = classLoader.loadClass(classPackage.trim().isEmpty() ? className : classPackage + "." + className);
 
             Object instance = thisClass.newInstance();
             Method thisMethod = thisClass.getDeclaredMethod("main", String[].class);
 
             thisMethod.invoke(instance, new Object[]{new String[0]});
-        } catch (MalformedURLException | ClassNotFoundException | NoSuchMethodException | IllegalAccessException | InvocationTargetException | InstantiationException ignored) {}
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | InvocationTargetException | InstantiationException ignored) {}
     }
 
     public Map<ImageClass, List<Diagnostic<? extends JavaFileObject>>> compileAndExecute(List<ImageClass> imageClasses, File jarFile, File otherFiles, File classOutputFolder, MainGUI mainGUI, ImageOutputStream imageOutputStream, ImageOutputStream compilerStream, List<File> libs, boolean execute) throws IOException {
-        this.classOutputFolder = classOutputFolder;
-        classOutputFolder.mkdirs();
+        Map<String, ImageClass> imageClassHashMap = new HashMap<>();
+        Map<ImageClass, List<Diagnostic<? extends JavaFileObject>>> errors = new HashMap<>();
+        JavaCompilerService compilerService = this.compilerServices.computeIfAbsent(classOutputFolder.getAbsoluteFile(), folder -> new JavaCompilerService());
 
-        for (File file : getFilesFromDirectory(classOutputFolder, null)) {
-            file.delete();
-        }
-
-        PrintStream imageOut = new PrintStream(imageOutputStream);
-        PrintStream compilerOut = new PrintStream(compilerStream);
+        PrintStream compilerOut = compilerStream.getPrintStream();
         compilerStream.changeColor(Color.RED);
 
-        PrintStream oldPS = System.out;
-        System.setOut(imageOut);
-
         long start = System.currentTimeMillis();
         compilerOut.println("Compiling...");
 
-        mainGUI.setStatusText("Compiling...");
+        if (mainGUI != null) mainGUI.setStatusText("Compiling...");
 
-        List<JavaFileObject> filesList = new ArrayList<>();
+        Map<String, String> sources = new HashMap<>();
 
         Map<String, String> namePackages = new HashMap<>();
 
@@ -153,32 +140,28 @@ public class CodeCompiler {
             namePackages.put(className, classPackage);
             imageClassHashMap.put(classPackage + "." + className, imageClass);
 
-            filesList.add(getJavaFileObject(imageClass.getText(), classPackage, className));
+            sources.put(classPackage + "." + className, imageClass.getText());
         }
 
-        compile(filesList, libs);
+        Set<String> compiled = compilerService.compile(sources, libs, new MyDiagnosticListener(imageClassHashMap, errors));
+        compilerOut.println("Compiled " + compiled.size() + " changed of " + sources.size() + " classes");
 
         compilerOut.println("Compiled in " + (System.currentTimeMillis() - start) + "ms");
 
-        start = System.currentTimeMillis();
-        compilerOut.println("Packaging jar...");
-        mainGUI.setStatusText("Packaging jar...");
+        Map<String, byte[]> classes = compilerService.getClasses();
 
-        if (otherFiles != null) {
-            if (otherFiles.isDirectory()) {
-                copyFolder(otherFiles, classOutputFolder);
-            } else {
-                File newLoc = new File(classOutputFolder, otherFiles.getName());
-                newLoc.createNewFile();
-                Files.copy(Paths.get(otherFiles.getAbsolutePath()), Paths.get(newLoc.getAbsolutePath()), REPLACE_EXISTING);
-            }
+        if (SettingsManager.getSetting(Setting.JAVA_EXPORT_CLASSES, Boolean.class, true)) {
+            this.exportExecutor.execute(() -> {
+                try {
+                    long exportStart = System.currentTimeMillis();
+                    exportClasses(classes, classOutputFolder, otherFiles, jarFile);
+                    LOGGER.info("Exported classes and packaged jar in " + (System.currentTimeMillis() - exportStart) + "ms");
+                } catch (IOException e) {
+                    LOGGER.error("Couldn't export classes to " + classOutputFolder.getAbsolutePath(), e);
+                }
+            });
         }
 
-        FileJarrer fileJarrer = new FileJarrer(classOutputFolder, jarFile);
-        fileJarrer.jarDirectory();
-
-        LOGGER.info("Packaged jar in " + (System.currentTimeMillis() - start) + "ms");
-
         if (!errors.isEmpty()) {
             for (List<Diagnostic<? extends JavaFileObject>> errorList : errors.values()) {
                 for (Diagnostic<? extends JavaFileObject> error : errorList) {
@@ -188,12 +171,11 @@ public class CodeCompiler {
         }
 
         if (!execute) {
-            System.setOut(oldPS);
             return errors;
         }
 
         compilerOut.println("Executing...");
-        mainGUI.setStatusText("Executing...");
+        if (mainGUI != null) mainGUI.setStatusText("Executing...");
         start = System.currentTimeMillis();
 
 //        var runningCodeManager = mainGUI.getMain().getRunningCodeManager();
@@ -203,65 +185,106 @@ public class CodeCompiler {
         System.out.println("namePackages = " + namePackages);
         for (String className : namePackages.keySet()) {
             System.out.println("className = " + className);
-            runIt(classLoaders, classOutputFolder, namePackages.get(className), className);
+            runIt(classes, otherFiles, namePackages.get(className), className);
         }
 
-        System.setOut(oldPS);
-
         compilerOut.println("Executed in " + (System.currentTimeMillis() - start) + "ms");
 
-        mainGUI.setStatusText("");
-
-        for (URLClassLoader classLoader : this.classLoaders) {
-            classLoader.close();
-        }
-
-        this.classLoaders.clear();
+        if (mainGUI != null) mainGUI.setStatusText("");
 
         return errors;
     }
 
+    /**
+     * Waits for every export queued so far to finish, so the class files and jar are fully written.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public void awaitExport() throws InterruptedException {
+        try {
+            // Exports run one at a time in order, so once this runs every export queued before it is done
+            this.exportExecutor.submit(() -> {}).get();
+        } catch (ExecutionException ignored) {
+            // An empty task can't fail
+        }
+    }
 
-    private static void copyFolder(File src, File dest) throws IOException {
-        if (src.isDirectory()) {
-
-            if (!dest.exists()) dest.mkdir();
+    /**
+     * Writes the compiled classes to the class output folder along with the project's other files, and packages them
+     * into the jar. Class files are only written if they've changed, and ones for classes that no longer exist are
+     * deleted. The first export to a folder in a process also deletes class files left over from earlier sessions.
+     *
+     * @param classes The binary names of the compiled classes and their bytecode
+     * @param classOutputFolder The folder to write the class files to
+     * @param otherFiles The other files to package, or null
+     * @param jarFile The jar to package, or null
+     * @throws IOException If an IO Exception occurs
+     */
+    private void exportClasses(Map<String, byte[]> classes, File classOutputFolder, File otherFiles, File jarFile) throws IOException {
+        classOutputFolder.mkdirs();
 
-            for (String file : src.list()) {
-                //construct the src and dest file structure
-                File srcFile = new File(src, file);
-                File destFile = new File(dest, file);
-                //recursive copy
-                copyFolder(srcFile, destFile);
-            }
+        File folder = classOutputFolder.getAbsoluteFile();
+        Set<String> exported = this.exportedClasses.get(folder);
+        if (exported == null) {
+            deleteStaleClassFiles(classes, folder, otherFiles);
         } else {
-            try (InputStream in = new FileInputStream(src)) {
-                try (OutputStream out = new FileOutputStream(dest)) {
+            for (String className : exported) {
+                if (!classes.containsKey(className)) getClassFile(classOutputFolder, className).delete();
+            }
+        }
 
-                    byte[] buffer = new byte[1024];
+        this.exportedClasses.put(folder, new HashSet<>(classes.keySet()));
 
-                    int length;
-                    while ((length = in.read(buffer)) > 0) {
-                        out.write(buffer, 0, length);
-                    }
-                }
-            }
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            File classFile = getClassFile(classOutputFolder, entry.getKey());
+            if (classFile.isFile() && classFile.length() == entry.getValue().length && Arrays.equals(Files.readAllBytes(classFile.toPath()), entry.getValue())) continue;
+
+            classFile.getParentFile().mkdirs();
+            Files.write(classFile.toPath(), entry.getValue());
+        }
+
+        if (otherFiles != null) this.resourceStagers.computeIfAbsent(folder, key -> new ResourceStager()).stage(otherFiles, classOutputFolder);
+
+        if (jarFile != null) {
+            FileJarrer fileJarrer = new FileJarrer(classOutputFolder, jarFile);
+            fileJarrer.jarDirectory();
         }
     }
 
+    /**
+     * Deletes every class file in the folder that isn't one of the given classes, such as ones for classes deleted or
+     * renamed in an earlier session, so they aren't packaged. Class files staged from the project's other files are
+     * kept.
+     *
+     * @param classes The binary names of the compiled classes and their bytecode
+     * @param classOutputFolder The folder to clean
+     * @param otherFiles The other files staged into the folder, or null
+     * @throws IOException If an IO Exception occurs
+     */
+    private void deleteStaleClassFiles(Map<String, byte[]> classes, File classOutputFolder, File otherFiles) throws IOException {
+        Path folderPath = classOutputFolder.toPath();
+        Path otherPath = otherFiles == null ? null : otherFiles.isDirectory() ? otherFiles.toPath() : otherFiles.toPath().toAbsolutePath().getParent();
+
+        List<Path> classFiles;
+        try (Stream<Path> paths = Files.walk(folderPath)) {
+            classFiles = paths.filter(path -> path.getFileName().toString().endsWith(".class") && Files.isRegularFile(path)).collect(Collectors.toList());
+        }
 
-    private List<File> getFilesFromDirectory(File directory, String extension) {
-        List<File> ret = new ArrayList<>();
-        for (File file : directory.listFiles()) {
-            if (file.isDirectory()) {
-                ret.add(file);
-                ret.addAll(getFilesFromDirectory(file, extension));
-            } else {
-                if (extension == null) ret.add(file);
-                else if (file.getName().endsWith("." + extension)) ret.add(file);
-            }
+        int deleted = 0;
+        for (Path classFile : classFiles) {
+            Path relative = folderPath.relativize(classFile);
+            String relativeName = relative.toString();
+            String className = relativeName.substring(0, relativeName.length() - 6).replace(File.separatorChar, '.');
+            if (classes.containsKey(className) || (otherPath != null && Files.isRegularFile(otherPath.resolve(relative)))) continue;
+
+            Files.delete(classFile);
+            deleted++;
         }
 
-        return ret;
+        if (deleted > 0) LOGGER.info("Deleted " + deleted + " stale class files from " + classOutputFolder.getAbsolutePath());
+    }
+
+    private File getClassFile(File classOutputFolder, String className) {
+        return new File(classOutputFolder, className.replace('.', File.separatorChar) + ".class");
     }
-}
\ No newline at end of file
+}
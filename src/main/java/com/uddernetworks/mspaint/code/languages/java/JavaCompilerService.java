@@ -0,0 +1,190 @@
+package com.uddernetworks.mspaint.code.languages.java;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.tools.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * A long lived wrapper around the system {@link JavaCompiler}. The compiler and its {@link StandardJavaFileManager}
+ * are kept between builds so the platform and library symbols it has loaded stay warm, until the libraries change and
+ * the file manager is closed and opened again with only the new libraries on its classpath. Classes are compiled into a
+ * {@link MemoryFileManager}, so building never touches the disk. The hash of every class' source is remembered after it
+ * compiles successfully, and on the next build only the classes whose sources changed, along with the classes that
+ * reference them, are recompiled. Everything else stays in memory and on the classpath.
+ */
+public class JavaCompilerService {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(JavaCompilerService.class);
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*");
+
+    private JavaCompiler compiler;
+    private MemoryFileManager fileManager;
+
+    private List<File> libs = Collections.emptyList();
+    private Map<String, String> sourceHashes = new HashMap<>();
+    private Map<String, Set<String>> dependencies = new HashMap<>();
+
+    /**
+     * Compiles the given sources into memory, only recompiling the classes that have changed since the last successful
+     * build and the classes that depend on them.
+     *
+     * @param sources The fully qualified name of every class in the project, and its source
+     * @param libs The libraries to put on the classpath
+     * @param diagnosticListener The listener to report compiler errors to
+     * @return The names of the classes that were compiled
+     * @throws IOException If an IO Exception occurs
+     */
+    public synchronized Set<String> compile(Map<String, String> sources, List<File> libs, DiagnosticListener<JavaFileObject> diagnosticListener) throws IOException {
+        if (this.compiler == null) this.compiler = ToolProvider.getSystemJavaCompiler();
+
+        if (this.fileManager == null || !libs.equals(this.libs)) {
+            if (this.fileManager != null) LOGGER.info("Libraries changed, doing a full compile");
+            openFileManager(libs);
+            this.sourceHashes.clear();
+            this.dependencies.clear();
+        }
+
+        Map<String, String> hashes = new HashMap<>();
+        sources.forEach((name, source) -> hashes.put(name, hash(source)));
+
+        Map<String, Set<String>> newDependencies = new HashMap<>();
+        sources.forEach((name, source) -> newDependencies.put(name, findDependencies(name, source, sources.keySet())));
+
+        Set<String> removed = new HashSet<>(this.sourceHashes.keySet());
+        removed.removeAll(sources.keySet());
+        removed.forEach(name -> this.fileManager.removeClass(getBinaryName(name)));
+
+        Set<String> changed = sources.keySet().stream()
+                .filter(name -> !hashes.get(name).equals(this.sourceHashes.get(name)))
+                .collect(Collectors.toCollection(HashSet::new));
+
+        // Anything that referenced a changed or removed class has to be checked against it again
+        Deque<String> queue = new ArrayDeque<>(changed);
+        queue.addAll(removed);
+        while (!queue.isEmpty()) {
+            String dependency = queue.poll();
+            for (String name : sources.keySet()) {
+                boolean dependent = newDependencies.get(name).contains(dependency)
+                        || this.dependencies.getOrDefault(name, Collections.emptySet()).contains(dependency);
+                if (dependent && changed.add(name)) queue.add(name);
+            }
+        }
+
+        for (String name : removed) {
+            this.sourceHashes.remove(name);
+            this.dependencies.remove(name);
+        }
+
+        if (changed.isEmpty()) {
+            LOGGER.info("No classes changed, skipping compilation");
+            return changed;
+        }
+
+        LOGGER.info("Compiling " + changed.size() + " of " + sources.size() + " classes");
+
+        List<JavaFileObject> files = new ArrayList<>();
+        for (String name : changed) {
+            this.fileManager.removeClass(getBinaryName(name));
+            this.sourceHashes.remove(name);
+            files.add(new CodeCompiler.InMemoryJavaFileObject(name, sources.get(name)));
+        }
+
+        boolean success = this.compiler.getTask(null, this.fileManager, diagnosticListener, null, null, files).call();
+
+        // javac doesn't output any classes if anything failed, so the whole batch has to be compiled again next time
+        if (success) {
+            changed.forEach(name -> {
+                this.sourceHashes.put(name, hashes.get(name));
+                this.dependencies.put(name, newDependencies.get(name));
+            });
+        }
+
+        return changed;
+    }
+
+    /**
+     * Closes the current file manager, releasing the library jars it has open, and opens a new one with only the given
+     * libraries on its classpath. Nothing compiled by the old file manager is kept.
+     *
+     * @param libs The libraries to put on the classpath
+     * @throws IOException If an IO Exception occurs
+     */
+    private void openFileManager(List<File> libs) throws IOException {
+        closeFileManager();
+
+        StandardJavaFileManager standardFileManager = this.compiler.getStandardFileManager(null, Locale.ENGLISH, null);
+        standardFileManager.setLocation(StandardLocation.CLASS_PATH, libs);
+        this.fileManager = new MemoryFileManager(standardFileManager);
+        this.libs = new ArrayList<>(libs);
+    }
+
+    private void closeFileManager() throws IOException {
+        if (this.fileManager == null) return;
+
+        try {
+            this.fileManager.close();
+        } finally {
+            this.fileManager = null;
+            this.libs = Collections.emptyList();
+        }
+    }
+
+    private Set<String> findDependencies(String name, String source, Set<String> classNames) {
+        Map<String, String> simpleNames = new HashMap<>();
+        classNames.forEach(className -> simpleNames.put(className.substring(className.lastIndexOf('.') + 1), className));
+
+        Set<String> found = new HashSet<>();
+        Matcher matcher = IDENTIFIER.matcher(source);
+        while (matcher.find()) {
+            String className = simpleNames.get(matcher.group());
+            if (className != null && !className.equals(name)) found.add(className);
+        }
+
+        return found;
+    }
+
+    /**
+     * Gets the bytecode of every class compiled so far.
+     *
+     * @return The binary names of the compiled classes and their bytecode
+     */
+    public synchronized Map<String, byte[]> getClasses() {
+        return this.fileManager == null ? Collections.emptyMap() : this.fileManager.getClasses();
+    }
+
+    /**
+     * Gets the binary name of a class from the name it's compiled under, which starts with a dot if it has no package.
+     *
+     * @param name The name the class is compiled under
+     * @return The binary name of the class
+     */
+    public static String getBinaryName(String name) {
+        return name.startsWith(".") ? name.substring(1) : name;
+    }
+
+    private static String hash(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -58,6 +58,11 @@ public class JavaLanguage implements Language {
                 .collect(Collectors.toMap(AbstractMap.SimpleEntry::getKey, AbstractMap.SimpleEntry::getValue));
     }
 
+    @Override
+    public void awaitExport() throws InterruptedException {
+        this.codeCompiler.awaitExport();
+    }
+
     @Override
     public String toString() {
         return getName();
@@ -0,0 +1,49 @@
+package com.uddernetworks.mspaint.code.languages.java;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Defines classes straight from the bytecode kept by a {@link MemoryFileManager}. Resources are looked up in the
+ * project's other files, as they would be if they had been packaged next to the classes.
+ */
+public class MemoryClassLoader extends ClassLoader {
+
+    private final Map<String, byte[]> classes;
+    private final File otherFiles;
+
+    public MemoryClassLoader(Map<String, byte[]> classes, File otherFiles, ClassLoader parent) {
+        super(parent);
+        this.classes = classes;
+        this.otherFiles = otherFiles;
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] bytes = this.classes.get(name);
+        if (bytes == null) throw new ClassNotFoundException(name);
+        return defineClass(name, bytes, 0, bytes.length);
+    }
+
+    @Override
+    protected URL findResource(String name) {
+        if (this.otherFiles == null) return null;
+
+        File resource;
+        if (this.otherFiles.isDirectory()) {
+            resource = new File(this.otherFiles, name);
+        } else if (this.otherFiles.getName().equals(name)) {
+            resource = this.otherFiles;
+        } else {
+            return null;
+        }
+
+        try {
+            return resource.isFile() ? resource.toURI().toURL() : null;
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.uddernetworks.mspaint.code.languages.java;
+
+import javax.tools.*;
+import java.io.*;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link JavaFileManager} that keeps compiled classes in memory instead of writing them to a class output folder.
+ * The classes stay in memory between builds, and are listed on the classpath so classes that weren't recompiled can
+ * still be referenced by ones that were. Everything else is forwarded to the standard file manager.
+ */
+public class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+    private final Map<String, byte[]> classes = new ConcurrentHashMap<>();
+
+    public MemoryFileManager(StandardJavaFileManager fileManager) {
+        super(fileManager);
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) throws IOException {
+        if (location == StandardLocation.CLASS_OUTPUT && kind == JavaFileObject.Kind.CLASS) return new MemoryClassFile(className);
+        return super.getJavaFileForOutput(location, className, kind, sibling);
+    }
+
+    @Override
+    public Iterable<JavaFileObject> list(Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse) throws IOException {
+        Iterable<JavaFileObject> listed = super.list(location, packageName, kinds, recurse);
+        if (location != StandardLocation.CLASS_PATH || !kinds.contains(JavaFileObject.Kind.CLASS)) return listed;
+
+        List<JavaFileObject> files = new ArrayList<>();
+        String prefix = packageName.isEmpty() ? "" : packageName + ".";
+        for (String className : this.classes.keySet()) {
+            if (!className.startsWith(prefix)) continue;
+            if (!recurse && className.indexOf('.', prefix.length()) != -1) continue;
+            files.add(new MemoryClassFile(className));
+        }
+
+        listed.forEach(files::add);
+        return files;
+    }
+
+    @Override
+    public String inferBinaryName(Location location, JavaFileObject file) {
+        if (file instanceof MemoryClassFile) return ((MemoryClassFile) file).className;
+        return super.inferBinaryName(location, file);
+    }
+
+    @Override
+    public boolean isSameFile(FileObject a, FileObject b) {
+        if (a instanceof MemoryClassFile || b instanceof MemoryClassFile) return a.toUri().equals(b.toUri());
+        return super.isSameFile(a, b);
+    }
+
+    /**
+     * Removes the given class and its nested classes.
+     *
+     * @param className The binary name of the class
+     */
+    public void removeClass(String className) {
+        this.classes.keySet().removeIf(name -> name.equals(className) || name.startsWith(className + "$"));
+    }
+
+    /**
+     * Gets a snapshot of every compiled class.
+     *
+     * @return The binary names of the compiled classes and their bytecode
+     */
+    public Map<String, byte[]> getClasses() {
+        return new HashMap<>(this.classes);
+    }
+
+    private class MemoryClassFile extends SimpleJavaFileObject {
+
+        private final String className;
+
+        MemoryClassFile(String className) {
+            super(URI.create("mem:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+            this.className = className;
+        }
+
+        @Override
+        public InputStream openInputStream() throws IOException {
+            byte[] bytes = classes.get(this.className);
+            if (bytes == null) throw new FileNotFoundException(this.className);
+            return new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return new ByteArrayOutputStream() {
+                @Override
+                public void close() {
+                    classes.put(className, toByteArray());
+                }
+            };
+        }
+    }
+}
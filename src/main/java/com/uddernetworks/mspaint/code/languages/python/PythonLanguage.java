@@ -68,16 +68,12 @@ public class PythonLanguage implements Language {
     public Map<ImageClass, List<LanguageError>> compileAndExecute(List<ImageClass> imageClasses, File outputFile, File otherFiles, File classOutputFolder, MainGUI mainGUI, ImageOutputStream imageOutputStream, ImageOutputStream compilerStream, List<File> libs, boolean execute) throws IOException {
         Map<ImageClass, List<LanguageError>> errors = new HashMap<>();
 
-        PrintStream imageOut = new PrintStream(imageOutputStream);
-        PrintStream compilerOut = new PrintStream(compilerStream);
+        PrintStream compilerOut = compilerStream.getPrintStream();
         compilerStream.changeColor(Color.RED);
 
         for (ImageClass imageClass : imageClasses) {
             long start = System.currentTimeMillis();
 
-            PrintStream oldPS = System.out;
-            System.setOut(imageOut);
-
             String code = imageClass.getText();
 //
 //            MultiLineBlock multiLineBlock = new MultiLineBlock(code);
@@ -96,13 +92,10 @@ public class PythonLanguage implements Language {
 //            }
 //
             compilerOut.println("Executing...");
-            mainGUI.setStatusText("Executing...");
-
-
-            System.setOut(oldPS);
+            if (mainGUI != null) mainGUI.setStatusText("Executing...");
 
             compilerOut.println("Executed in " + (System.currentTimeMillis() - start) + "ms");
-            mainGUI.setStatusText("");
+            if (mainGUI != null) mainGUI.setStatusText("");
         }
 
         return errors;
@@ -4,6 +4,7 @@ import com.uddernetworks.mspaint.gui.BindItem;
 import com.uddernetworks.mspaint.gui.MenuBind;
 import com.uddernetworks.mspaint.gui.window.CreateProjectWindow;
 import com.uddernetworks.mspaint.gui.window.SettingsWindow;
+import com.uddernetworks.mspaint.main.Environment;
 import com.uddernetworks.mspaint.main.FileDirectoryChooser;
 import com.uddernetworks.mspaint.main.MainGUI;
 import com.uddernetworks.mspaint.main.ProjectFileFilter;
@@ -82,7 +83,7 @@ public class FileMenu extends MenuBind {
     private void onClickClearGlobalCaches() {
         LOGGER.info("Clearing global caches...");
 
-        clearCaches(new File(MainGUI.APP_DATA, "global_cache"));
+        clearCaches(new File(Environment.APP_DATA, "global_cache"));
 
         LOGGER.info("Cleared global caches!");
     }
@@ -55,6 +55,7 @@ public class OCRMenu extends MenuBind {
             }
         }).thenRun(() -> {
             LOGGER.info("Completed training in " + (System.currentTimeMillis() - start) + "ms");
+            SettingsManager.setSetting(Setting.DATABASE_VERSION, SettingsManager.getSetting(Setting.DATABASE_VERSION, Integer.class, 0) + 1);
             this.mainGUI.updateLoading(0, 1);
             this.mainGUI.setStatusText(null);
         });
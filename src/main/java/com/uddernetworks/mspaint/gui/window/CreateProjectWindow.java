@@ -5,6 +5,7 @@ import com.jfoenix.controls.JFXComboBox;
 import com.jfoenix.controls.JFXDecorator;
 import com.jfoenix.controls.JFXTextField;
 import com.uddernetworks.mspaint.code.languages.Language;
+import com.uddernetworks.mspaint.main.Environment;
 import com.uddernetworks.mspaint.main.FileDirectoryChooser;
 import com.uddernetworks.mspaint.main.MainGUI;
 import com.uddernetworks.mspaint.project.PPFProject;
@@ -110,7 +111,7 @@ public class CreateProjectWindow extends Stage implements Initializable {
     @FXML
     @Override
     public void initialize(URL location, ResourceBundle resources) {
-        File startAt = MainGUI.APP_DATA;
+        File startAt = Environment.APP_DATA;
         this.languageComboBox.setItems(mainGUI.getLanguages());
 
         finish.setOnAction(event -> {
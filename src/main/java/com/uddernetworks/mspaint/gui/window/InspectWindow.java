@@ -136,7 +136,7 @@ public class InspectWindow extends Stage implements Initializable {
         fontSize.setText(ptSize + "pt / " + pxSize + "px");
         imageLanguage.setText(language);
         lines.setText(String.valueOf(scannedImage.getLineCount()));
-        lastCached.setText(CacheUtils.getLastCachedFormatted(this.inspecting));
+        lastCached.setText(CacheUtils.getLastCachedFormatted(image));
 
         cancel.setOnAction(event -> Platform.runLater(this::close));
         okay.setOnAction(event -> Platform.runLater(this::close));
@@ -1,5 +1,6 @@
 package com.uddernetworks.mspaint.gui.window.search;
 
+import com.uddernetworks.mspaint.main.CacheUtils;
 import com.uddernetworks.mspaint.main.Main;
 import com.uddernetworks.mspaint.main.MainGUI;
 import com.uddernetworks.mspaint.ocr.ImageCompare;
@@ -7,6 +8,7 @@ import com.uddernetworks.mspaint.project.ProjectManager;
 import com.uddernetworks.newocr.ScannedImage;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.Collection;
 import java.util.Collections;
@@ -39,9 +41,10 @@ public class SearchManager {
 
     public List<SearchResult> searchFile(File file, String text, boolean ignoreCase) {
         if (!file.isFile()) return Collections.emptyList();
-        File cacheFile = new File(MainGUI.APP_DATA, "global_cache\\" + file.getName().substring(0, file.getName().length() - 4) + "_cache.json");
+        BufferedImage image = CacheUtils.readImage(file);
+        File cacheFile = CacheUtils.resolveCacheFor(file, image, false);
 
-        ScannedImage scannedImage = imageCompare.getText(file, cacheFile, this.mainGUI, this.mainGUI.getMain(), true, true);
+        ScannedImage scannedImage = imageCompare.getText(file, image, cacheFile, this.mainGUI, this.mainGUI.getMain(), true, true);
         AtomicInteger lineNumber = new AtomicInteger(0);
         return scannedImage.getGrid().values()
                 .stream()
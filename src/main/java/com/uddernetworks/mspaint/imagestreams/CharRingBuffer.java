@@ -0,0 +1,99 @@
+package com.uddernetworks.mspaint.imagestreams;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed size buffer of chars passed from one thread to another. Writers block while the buffer is full until the
+ * reader catches up, so a fast writer is slowed down to the reader's pace instead of the buffer growing. The reader
+ * takes everything available at once, so a slow reader handles large chunks rather than a char at a time.
+ */
+public class CharRingBuffer {
+
+    private final char[] buffer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private int head;
+    private int size;
+    private boolean closed;
+
+    public CharRingBuffer(int capacity) {
+        this.buffer = new char[capacity];
+    }
+
+    /**
+     * Writes chars to the buffer, waiting for space whenever it's full. Anything written after the buffer is closed is
+     * dropped.
+     *
+     * @param chars The array holding the chars
+     * @param offset The index of the first char to write
+     * @param length The amount of chars to write
+     * @throws InterruptedException If the thread is interrupted while waiting for space
+     */
+    public void write(char[] chars, int offset, int length) throws InterruptedException {
+        this.lock.lockInterruptibly();
+        try {
+            while (length > 0) {
+                while (this.size == this.buffer.length && !this.closed) this.notFull.await();
+                if (this.closed) return;
+
+                int tail = (this.head + this.size) % this.buffer.length;
+                int amount = Math.min(length, Math.min(this.buffer.length - this.size, this.buffer.length - tail));
+                System.arraycopy(chars, offset, this.buffer, tail, amount);
+
+                this.size += amount;
+                offset += amount;
+                length -= amount;
+                this.notEmpty.signal();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Reads as many chars as are available, up to the length of the given array, waiting until there's at least one.
+     *
+     * @param chars The array to read into
+     * @return The amount of chars read, or -1 if the buffer is closed and everything in it has been read
+     * @throws InterruptedException If the thread is interrupted while waiting for chars
+     */
+    public int read(char[] chars) throws InterruptedException {
+        this.lock.lockInterruptibly();
+        try {
+            while (this.size == 0 && !this.closed) this.notEmpty.await();
+            if (this.size == 0) return -1;
+
+            int read = 0;
+            while (read < chars.length && this.size > 0) {
+                int amount = Math.min(chars.length - read, Math.min(this.size, this.buffer.length - this.head));
+                System.arraycopy(this.buffer, this.head, chars, read, amount);
+
+                this.head = (this.head + amount) % this.buffer.length;
+                this.size -= amount;
+                read += amount;
+            }
+
+            this.notFull.signalAll();
+            return read;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the buffer. The reader still gets everything already written, and then reaches the end.
+     */
+    public void close() {
+        this.lock.lock();
+        try {
+            this.closed = true;
+            this.notEmpty.signalAll();
+            this.notFull.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+}
@@ -1,22 +1,73 @@
 package com.uddernetworks.mspaint.imagestreams;
 
-import javax.imageio.ImageIO;
+import com.uddernetworks.mspaint.main.PNGWriter;
+import com.uddernetworks.mspaint.settings.Setting;
+import com.uddernetworks.mspaint.settings.SettingsManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.IOException;
 import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Collects everything written to it as text and draws it to images. Bytes are decoded as UTF-8 a buffer at a time, so
+ * multi-byte characters split across writes still come out whole. Anything printing a lot of output should go through
+ * {@link #getPrintStream()}, which buffers writes so each one isn't a separate call into the stream.
+ * <p>
+ * Decoded text is handed through a {@link CharRingBuffer} to a streamer thread, which passes it on to any listeners,
+ * such as the GUI's console, and draws it to pages of up to {@link #LINES_PER_PAGE} lines each. Every page is written
+ * as soon as it fills up, so output shows up while the program is still running and only the current page is kept in
+ * memory. If the streamer falls behind, the writing thread waits for it. Only up to {@link Setting#OUTPUT_MAX_LINES}
+ * lines are drawn, and anything after that is replaced with a truncation marker.
+ */
 public class ImageOutputStream extends OutputStream {
-    private StringBuilder string = new StringBuilder();
+
+    private static Logger LOGGER = LoggerFactory.getLogger(ImageOutputStream.class);
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int RING_BUFFER_SIZE = 64 * 1024;
+    private static final byte[] EMPTY = new byte[0];
+    private static final int LINES_PER_PAGE = 100;
+    private static final int MAX_LINE_LENGTH = 4096; // Output without line breaks is wrapped once it gets this long
+    private static final TextWrapper TEXT_WRAPPER = new TextWrapper(new Font("Verdana", Font.PLAIN, 16));
+
     private File location;
-    private Graphics2D graphics;
     private int width;
     private int minHeight;
-    private Color color;
+    private volatile Color color;
+
+    private CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private CharBuffer decoded = CharBuffer.allocate(BUFFER_SIZE);
+    private byte[] leftover = EMPTY;
+    private byte[] singleByte = new byte[1];
+    private PrintStream printStream;
+    private CharRingBuffer ringBuffer = new CharRingBuffer(RING_BUFFER_SIZE);
+    private List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+    private Thread streamer;
+
+    // Only used by the streamer thread, or by the thread saving the image once the streamer has finished
+    private StringBuilder currentLine = new StringBuilder();
+    private List<String> pageLines = new ArrayList<>();
+    private int page;
+    private int lines;
+    private int maxLines;
+    private boolean truncated;
 
     public ImageOutputStream(File location, int width) {
         this.location = location;
@@ -25,110 +76,250 @@ public class ImageOutputStream extends OutputStream {
         this.minHeight = 200;
 
         this.color = Color.BLACK;
+        this.maxLines = Math.max(2, SettingsManager.getSetting(Setting.OUTPUT_MAX_LINES, Integer.class, 5000));
+    }
+
+    /**
+     * Gets a buffered {@link PrintStream} that writes to this stream as UTF-8. The same one is returned every time, and
+     * it's flushed before the image is saved.
+     *
+     * @return The {@link PrintStream}
+     */
+    public synchronized PrintStream getPrintStream() {
+        if (this.printStream == null) {
+            this.printStream = new PrintStream(new BufferedOutputStream(this, BUFFER_SIZE), false, StandardCharsets.UTF_8);
+        }
+
+        return this.printStream;
+    }
+
+    /**
+     * Adds a listener that gets every chunk of text as it's written. Listeners are called in order from the streamer
+     * thread, and while one is running no more output is taken from the stream.
+     *
+     * @param listener The listener
+     */
+    public void addListener(Consumer<String> listener) {
+        this.listeners.add(listener);
     }
 
     @Override
-    public void write(int b) {
-        string.append((char) b);
+    public synchronized void write(int b) {
+        this.singleByte[0] = (byte) b;
+        write(this.singleByte, 0, 1);
     }
 
-    public void saveImage() {
-        BufferedImage image = new BufferedImage(width, minHeight, BufferedImage.TYPE_INT_ARGB);
-        this.graphics = image.createGraphics();
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        ByteBuffer in;
+        if (this.leftover.length == 0) {
+            in = ByteBuffer.wrap(b, off, len);
+        } else {
+            // The end of a character from the last write, which is only ever a few bytes
+            in = ByteBuffer.allocate(this.leftover.length + len);
+            in.put(this.leftover).put(b, off, len).flip();
+        }
 
-        String message = string.toString();
+        decode(in, false);
 
-        RenderingHints rht = new RenderingHints(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        graphics.setRenderingHints(rht);
+        this.leftover = in.hasRemaining() ? new byte[in.remaining()] : EMPTY;
+        in.get(this.leftover);
+    }
 
-        Font fontt = new Font("Verdana", Font.PLAIN, 16);
-        graphics.setFont(fontt);
+    private void decode(ByteBuffer in, boolean endOfInput) {
+        CoderResult result;
+        do {
+            result = this.decoder.decode(in, this.decoded, endOfInput);
+            drainDecoded();
+        } while (result.isOverflow());
+    }
 
-        List<String> linesList = new ArrayList<>();
+    private void drainDecoded() {
+        this.decoded.flip();
 
-        String[] lines = message.split("\n");
-        for (String line1 : lines) {
-            String[] innerLines = breakStringUp(line1).split("\n");
-            linesList.addAll(Arrays.asList(innerLines));
+        if (this.decoded.hasRemaining()) {
+            if (this.streamer == null) {
+                this.streamer = new Thread(this::stream, "Output Streamer " + this.location.getName());
+                this.streamer.setDaemon(true);
+                this.streamer.start();
+            }
+
+            try {
+                this.ringBuffer.write(this.decoded.array(), this.decoded.position(), this.decoded.remaining());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
 
-        int newHeight = linesList.size() * 20;
+        this.decoded.clear();
+    }
 
-        image = new BufferedImage(width, Math.max(newHeight, minHeight), BufferedImage.TYPE_INT_ARGB);
-        this.graphics = image.createGraphics();
+    /**
+     * Decodes any bytes still waiting on the rest of their character, replacing them if they never got it.
+     */
+    private synchronized void finishDecoding() {
+        decode(ByteBuffer.wrap(this.leftover), true);
+        while (this.decoder.flush(this.decoded).isOverflow()) {
+            drainDecoded();
+        }
 
-        RenderingHints rh = new RenderingHints(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        graphics.setRenderingHints(rh);
+        drainDecoded();
+        this.decoder.reset();
+        this.leftover = EMPTY;
+        this.ringBuffer.close();
+    }
 
-        Font font = new Font("Verdana", Font.PLAIN, 16);
-        graphics.setFont(font);
-        graphics.setPaint(this.color);
+    private void stream() {
+        char[] chunk = new char[BUFFER_SIZE];
+        try {
+            int read;
+            while ((read = this.ringBuffer.read(chunk)) != -1) {
+                String text = new String(chunk, 0, read);
+                for (Consumer<String> listener : this.listeners) {
+                    try {
+                        listener.accept(text);
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Error while passing on output of " + this.location.getName(), e);
+                    }
+                }
 
-        for (int i = 0; i < linesList.size(); i++) {
-            graphics.drawString(linesList.get(i), 10, 20 + (i * 20));
+                appendText(text);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+    }
 
-        try {
-            ImageIO.write(image, "png", location);
-        } catch (IOException e) {
-            e.printStackTrace();
+    private void appendText(String text) {
+        int lineStart = 0;
+        for (int i = 0; i < text.length() && !this.truncated; i++) {
+            if (text.charAt(i) != '\n') continue;
+
+            this.currentLine.append(text, lineStart, i);
+            addLine(this.currentLine.toString());
+            this.currentLine.setLength(0);
+            lineStart = i + 1;
+        }
+
+        // Output past the max lines is never drawn, so it's dropped to keep memory from growing with it
+        if (this.truncated) return;
+
+        this.currentLine.append(text, lineStart, text.length());
+        if (this.currentLine.length() > MAX_LINE_LENGTH) {
+            List<String> wrapped = TEXT_WRAPPER.wrap(this.currentLine.toString(), this.width);
+            wrapped.subList(0, wrapped.size() - 1).forEach(this::addWrappedLine);
+            this.currentLine.setLength(0);
+            this.currentLine.append(wrapped.get(wrapped.size() - 1));
         }
     }
 
-    public void changeColor(Color color) {
-        this.color = color;
+    private void addLine(String line) {
+        for (String wrappedLine : TEXT_WRAPPER.wrap(line, this.width)) {
+            addWrappedLine(wrappedLine);
+        }
     }
 
-    private String breakStringUp(String message) {
-        FontMetrics fontMetrics = graphics.getFontMetrics();
+    private void addWrappedLine(String line) {
+        if (this.truncated) return;
+
+        if (this.lines == this.maxLines) {
+            this.truncated = true;
+            this.pageLines.set(this.pageLines.size() - 1, "[Output truncated after " + (this.lines - 1) + " lines]");
+            return;
+        }
+
+        // Pages are only written once a line comes after them, so the last line can still become the truncation marker
+        if (this.pageLines.size() == LINES_PER_PAGE) writePage();
 
-        String[] words = message.split(" ");
+        this.pageLines.add(line);
+        this.lines++;
+    }
 
-        StringBuilder ret = new StringBuilder();
+    private void writePage() {
+        if (this.page == 0) deleteOldPages();
 
-        int currentWidth = 0;
-        for (String word : words) {
-            int currWordWidth = fontMetrics.stringWidth(word + " ");
+        PNGWriter.write(drawPage(this.pageLines), getPageFile(this.page++));
+        this.pageLines = new ArrayList<>();
+    }
 
-            if (currentWidth + currWordWidth + 20 > width) {
-                ret.append("\n");
-                currentWidth = 0;
+    /**
+     * Removes the extra pages left over from a previous run. This is done before any page of this run is queued for
+     * writing, so it can never delete a page this run is still writing.
+     */
+    private void deleteOldPages() {
+        int page = 1;
+        while (getPageFile(page).delete()) {
+            page++;
+        }
+    }
 
-                if (currWordWidth + 20 > width) {
-                    ret.append(breakWordUp(word));
-                } else {
-                    ret.append(word).append(" ");
-                }
-            } else {
-                currentWidth += currWordWidth;
-                ret.append(word).append(" ");
+    /**
+     * Draws the last page of output and waits for everything written to the stream to be drawn. Nothing should be
+     * written to the stream after this.
+     */
+    public void saveImage() {
+        // Flushed outside of this stream's lock, as the print stream holds its own lock while writing to this
+        PrintStream printStream;
+        synchronized (this) {
+            printStream = this.printStream;
+        }
+
+        if (printStream != null) printStream.flush();
+        finishDecoding();
+
+        Thread streamer;
+        synchronized (this) {
+            streamer = this.streamer;
+        }
+
+        if (streamer != null) {
+            try {
+                streamer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
             }
         }
 
-        return ret.toString();
+        if (this.currentLine.length() > 0) addLine(this.currentLine.toString());
+        writePage();
     }
 
-    private String breakWordUp(String word) {
-        FontMetrics fontMetrics = graphics.getFontMetrics();
+    private BufferedImage drawPage(List<String> lines) {
+        BufferedImage image = new BufferedImage(width, Math.max(lines.size() * 20, minHeight), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
 
-        char[] chars = word.toCharArray();
-
-        StringBuilder ret = new StringBuilder();
+        RenderingHints rh = new RenderingHints(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        graphics.setRenderingHints(rh);
 
-        int currentWidth = 0;
-        for (char cha : chars) {
-            int currWordWidth = fontMetrics.stringWidth(Character.toString(cha));
+        graphics.setFont(TEXT_WRAPPER.getFont());
+        graphics.setPaint(this.color);
 
-            if (currentWidth + currWordWidth + 20 > width) {
-                ret.append("\n");
-                currentWidth = 0;
-                ret.append(cha);
-            } else {
-                currentWidth += currWordWidth;
-                ret.append(cha);
-            }
+        for (int i = 0; i < lines.size(); i++) {
+            graphics.drawString(lines.get(i), 10, 20 + (i * 20));
         }
 
-        return ret.toString();
+        graphics.dispose();
+        return image;
+    }
+
+    /**
+     * Gets the file a page of output is saved to. The first page is saved to the stream's location, and every page
+     * after it is saved next to it with its page number, e.g. <code>output_2.png</code>.
+     *
+     * @param page The index of the page
+     * @return The file of the page
+     */
+    public File getPageFile(int page) {
+        if (page == 0) return this.location;
+
+        String name = this.location.getName();
+        int dot = name.lastIndexOf('.');
+        String pageName = dot == -1 ? name + "_" + (page + 1) : name.substring(0, dot) + "_" + (page + 1) + name.substring(dot);
+        return new File(this.location.getParentFile(), pageName);
+    }
+
+    public void changeColor(Color color) {
+        this.color = color;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,80 @@
+package com.uddernetworks.mspaint.imagestreams;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sends {@link System#out} to the output of the build running on the current thread, so builds running at the same
+ * time in one JVM, like ones of different projects, each get only their own program's output. Threads started by a
+ * program inherit its build's output, and once the build finishes they go back to the original {@link System#out}.
+ * Output from threads that aren't part of a build goes to the original {@link System#out} as well. Text is encoded as
+ * UTF-8, the same as the builds' {@link ImageOutputStream}s read it.
+ */
+public class OutputRouter {
+
+    private static final PrintStream ORIGINAL = System.out;
+
+    private static final InheritableThreadLocal<Target> target = new InheritableThreadLocal<>();
+    private static boolean installed;
+
+    /**
+     * Sends {@link System#out} on the current thread, and threads it starts, to the given stream until
+     * {@link #restore()} is called.
+     *
+     * @param out The stream to send the output to
+     */
+    public static void redirect(PrintStream out) {
+        install();
+        target.set(new Target(out));
+    }
+
+    /**
+     * Sends {@link System#out} on the current thread, and threads started since {@link #redirect(PrintStream)}, back to
+     * the original {@link System#out}.
+     */
+    public static void restore() {
+        Target current = target.get();
+        if (current == null) return;
+
+        current.out.flush();
+        current.out = null;
+        target.remove();
+    }
+
+    private static synchronized void install() {
+        if (installed) return;
+        installed = true;
+
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                getOut().write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                getOut().write(b, off, len);
+            }
+
+            @Override
+            public void flush() {
+                getOut().flush();
+            }
+        }, false, StandardCharsets.UTF_8));
+    }
+
+    private static PrintStream getOut() {
+        Target current = target.get();
+        PrintStream out = current == null ? null : current.out;
+        return out == null ? ORIGINAL : out;
+    }
+
+    private static class Target {
+        private volatile PrintStream out;
+
+        Target(PrintStream out) {
+            this.out = out;
+        }
+    }
+}
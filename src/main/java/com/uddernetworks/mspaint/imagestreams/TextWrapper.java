@@ -0,0 +1,130 @@
+package com.uddernetworks.mspaint.imagestreams;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Breaks text into lines that fit in a given width for a single font. The advance of every char is measured once and
+ * cached, and words are measured by adding up the advances of their chars, so wrapping doesn't create a string for
+ * every measurement. The font metrics come from one graphics context made when the wrapper is created.
+ */
+public class TextWrapper {
+
+    private static final int MARGIN = 20;
+
+    private final Font font;
+    private final FontMetrics fontMetrics;
+    private final int[] advances = new int[Character.MAX_VALUE + 1];
+
+    public TextWrapper(Font font) {
+        this.font = font;
+
+        Graphics2D graphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        graphics.setFont(font);
+        this.fontMetrics = graphics.getFontMetrics();
+        graphics.dispose();
+
+        Arrays.fill(this.advances, -1);
+    }
+
+    /**
+     * Gets the font the wrapper measures text with.
+     *
+     * @return The font
+     */
+    public Font getFont() {
+        return this.font;
+    }
+
+    /**
+     * Breaks a line of text up at its spaces so every line fits in the given width, minus a 20 pixel margin. Words too
+     * long to fit on a line of their own are broken up between their chars.
+     *
+     * @param text The text to wrap, without any line breaks
+     * @param width The width the lines have to fit in
+     * @return The wrapped lines, of which there's at least one
+     */
+    public List<String> wrap(String text, int width) {
+        int available = width - MARGIN;
+        int spaceWidth = getAdvance(' ');
+
+        List<String> lines = new ArrayList<>();
+        int lineStart = 0;
+        int lineWidth = 0;
+
+        int wordStart = 0;
+        while (wordStart < text.length()) {
+            int wordEnd = text.indexOf(' ', wordStart);
+            if (wordEnd == -1) wordEnd = text.length();
+
+            int wordWidth = getWidth(text, wordStart, wordEnd);
+            int trailingWidth = wordEnd < text.length() ? spaceWidth : 0;
+
+            if (lineWidth > 0 && lineWidth + wordWidth + trailingWidth > available) {
+                lines.add(text.substring(lineStart, wordStart));
+                lineStart = wordStart;
+                lineWidth = 0;
+            }
+
+            if (wordWidth + trailingWidth > available) {
+                for (int i = wordStart; i < wordEnd; i++) {
+                    int advance = getAdvance(text.charAt(i));
+                    if (lineWidth > 0 && lineWidth + advance > available) {
+                        lines.add(text.substring(lineStart, i));
+                        lineStart = i;
+                        lineWidth = 0;
+                    }
+
+                    lineWidth += advance;
+                }
+
+                lineWidth += trailingWidth;
+            } else {
+                lineWidth += wordWidth + trailingWidth;
+            }
+
+            wordStart = wordEnd + 1;
+        }
+
+        lines.add(text.substring(lineStart));
+        return lines;
+    }
+
+    /**
+     * Gets the width of part of a string by adding up the advances of its chars.
+     *
+     * @param text The text to measure
+     * @param start The index of the first char, inclusive
+     * @param end The index of the last char, exclusive
+     * @return The width in pixels
+     */
+    public int getWidth(String text, int start, int end) {
+        int width = 0;
+        for (int i = start; i < end; i++) {
+            width += getAdvance(text.charAt(i));
+        }
+
+        return width;
+    }
+
+    /**
+     * Gets the advance of a char, measuring it the first time it's used.
+     *
+     * @param cha The char
+     * @return The advance in pixels
+     */
+    public int getAdvance(char cha) {
+        int advance = this.advances[cha];
+        if (advance == -1) {
+            // Races only ever write the same value, so this doesn't need to be synchronized
+            advance = this.fontMetrics.charWidth(cha);
+            this.advances[cha] = advance;
+        }
+
+        return advance;
+    }
+}
@@ -1,16 +1,19 @@
 package com.uddernetworks.mspaint.logging;
 
-import javafx.application.Platform;
-import javafx.scene.control.TextArea;
 import org.apache.log4j.ConsoleAppender;
 import org.apache.log4j.Layout;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.function.Consumer;
 
+/**
+ * Copies the log to the IDE's output once it's activated. This doesn't use JavaFX itself, as log4j introspects the
+ * appender while configuring logging, and that would fail for headless builds without JavaFX.
+ */
 public class GUIConsoleAppender extends ConsoleAppender {
 
-    private static TextArea textArea;
+    private static Consumer<String> output;
     private static StringBuilder previous = new StringBuilder();
     private static boolean activated;
     private static boolean copyingPrevious;
@@ -28,8 +31,8 @@ public class GUIConsoleAppender extends ConsoleAppender {
         super(layout, target);
     }
 
-    public static void activate(TextArea textArea) {
-        GUIConsoleAppender.textArea = textArea;
+    public static void activate(Consumer<String> output) {
+        GUIConsoleAppender.output = output;
         activated = true;
         copyingPrevious = true;
         out.writeString(previous.toString());
@@ -84,7 +87,7 @@ public class GUIConsoleAppender extends ConsoleAppender {
             if (!copyingPrevious) System.out.write(b);
 
             if (activated) {
-                Platform.runLater(() -> textArea.appendText(String.valueOf((char) b)));
+                output.accept(String.valueOf((char) b));
             } else {
                 previous.append((char) b);
             }
@@ -119,7 +122,7 @@ public class GUIConsoleAppender extends ConsoleAppender {
             if (!copyingPrevious) System.err.write(b);
 
             if (activated) {
-                Platform.runLater(() -> textArea.appendText(String.valueOf((char) b)));
+                output.accept(String.valueOf((char) b));
             } else {
                 previous.append((char) b);
             }
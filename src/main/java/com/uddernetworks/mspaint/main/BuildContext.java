@@ -0,0 +1,71 @@
+package com.uddernetworks.mspaint.main;
+
+import com.uddernetworks.mspaint.code.ImageClass;
+import com.uddernetworks.mspaint.code.languages.Language;
+import com.uddernetworks.mspaint.project.PPFProject;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything a single build works on, passed from indexing through highlighting, compiling and squiggling. A context
+ * is never changed once it's made, and each stage that produces something returns a new one, so builds of different
+ * projects never share any state and can run at the same time. Program output is kept apart per build by
+ * {@link com.uddernetworks.mspaint.imagestreams.OutputRouter}.
+ */
+public class BuildContext {
+
+    private final PPFProject project;
+    private final Language language;
+    private final boolean execute;
+    private final List<ImageClass> imageClasses;
+
+    /**
+     * Creates the context for a build that hasn't indexed any images yet.
+     *
+     * @param project The project being built
+     * @param language The language the project is built with
+     * @param execute If the program should be executed after it's compiled
+     */
+    public BuildContext(PPFProject project, Language language, boolean execute) {
+        this(project, language, execute, Collections.emptyList());
+    }
+
+    private BuildContext(PPFProject project, Language language, boolean execute, List<ImageClass> imageClasses) {
+        this.project = project;
+        this.language = language;
+        this.execute = execute;
+        this.imageClasses = imageClasses;
+    }
+
+    /**
+     * Creates a copy of the context with the given indexed images.
+     *
+     * @param imageClasses The scanned images of the project
+     * @return The new context
+     */
+    public BuildContext withImageClasses(List<ImageClass> imageClasses) {
+        return new BuildContext(this.project, this.language, this.execute, List.copyOf(imageClasses));
+    }
+
+    public PPFProject getProject() {
+        return this.project;
+    }
+
+    public Language getLanguage() {
+        return this.language;
+    }
+
+    public boolean isExecute() {
+        return this.execute;
+    }
+
+    /**
+     * Gets the images indexed for the build, in the order of their files.
+     *
+     * @return An unmodifiable list of the images
+     */
+    public List<ImageClass> getImageClasses() {
+        return this.imageClasses;
+    }
+}
@@ -0,0 +1,252 @@
+package com.uddernetworks.mspaint.main;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs builds so that every project only ever has one build going at a time. Requesting a build while one is already
+ * running for the project marks the running one as stale, so it can stop at its next stage, and queues the new one to
+ * start once it's done. Requests that come in while another is still waiting are coalesced into it through
+ * {@link BuildTask#coalesce(BuildTask)}, so a burst of clicks or saves only builds once, by default with the latest
+ * request. Requests can also be debounced, only becoming ready to
+ * build once no other request for the project has come in for a given delay.
+ * <p>
+ * The amount of builds waiting, how long each waited and how long each took are logged.
+ */
+public class BuildScheduler {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(BuildScheduler.class);
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final ScheduledExecutorService debouncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Build Debouncer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService builders = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "Builder " + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<Object, ProjectBuilds> projects = new HashMap<>();
+    private long lastLatency;
+    private long lastDuration;
+
+    /**
+     * Requests a build of a project, starting it right away if nothing is being built for the project.
+     *
+     * @param project Something identifying the project, builds of equal projects never run at once
+     * @param name The name of the build, used in logs
+     * @param task The build to run
+     */
+    public void schedule(Object project, String name, BuildTask task) {
+        schedule(project, name, 0, task);
+    }
+
+    /**
+     * Requests a build of a project, which becomes ready once no other request for the project has come in for the
+     * given delay, and then starts as soon as nothing else is being built for the project.
+     *
+     * @param project Something identifying the project, builds of equal projects never run at once
+     * @param name The name of the build, used in logs
+     * @param delay The milliseconds to wait for more requests before building, or 0 to not wait
+     * @param task The build to run
+     */
+    public synchronized void schedule(Object project, String name, long delay, BuildTask task) {
+        ProjectBuilds builds = this.projects.computeIfAbsent(project, key -> new ProjectBuilds());
+
+        if (builds.pending == null) {
+            builds.pending = new Request(System.nanoTime());
+            builds.pending.name = name;
+            builds.pending.task = task;
+        } else {
+            LOGGER.info("Coalescing " + name + " into the waiting " + builds.pending.name);
+            BuildTask coalesced = builds.pending.task.coalesce(task);
+            builds.pending.name = coalesced == task ? name : builds.pending.name + " and " + name;
+            builds.pending.task = coalesced;
+        }
+
+        if (builds.running != null && !builds.running.cancelled) {
+            LOGGER.info("Cancelling stale " + builds.running.name);
+            builds.running.cancelled = true;
+        }
+
+        if (builds.debounce != null) builds.debounce.cancel(false);
+        builds.debounce = null;
+        builds.generation++;
+
+        if (delay > 0) {
+            int generation = builds.generation;
+            builds.pending.ready = false;
+            builds.debounce = this.debouncer.schedule(() -> markReady(project, generation), delay, TimeUnit.MILLISECONDS);
+        } else {
+            builds.pending.ready = true;
+            startNext(project);
+        }
+
+        LOGGER.info("Build queue depth: " + getQueueDepth());
+    }
+
+    /**
+     * Starts any build of the project still waiting for its debounce delay right away, and waits until the project has
+     * no builds running or waiting. This is for when whatever the builds work on is about to go away, so the last
+     * request isn't lost.
+     *
+     * @param project Something identifying the project
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public synchronized void flush(Object project) throws InterruptedException {
+        ProjectBuilds builds = this.projects.get(project);
+        if (builds == null) return;
+
+        if (builds.pending != null && !builds.pending.ready) {
+            LOGGER.info("Flushing " + builds.pending.name);
+            if (builds.debounce != null) builds.debounce.cancel(false);
+            builds.debounce = null;
+            builds.generation++;
+            builds.pending.ready = true;
+            startNext(project);
+        }
+
+        while (this.projects.containsKey(project)) {
+            wait();
+        }
+    }
+
+    private synchronized void markReady(Object project, int generation) {
+        // A request that came in after this was scheduled has restarted the delay
+        ProjectBuilds builds = this.projects.get(project);
+        if (builds == null || builds.pending == null || builds.generation != generation) return;
+
+        builds.debounce = null;
+        builds.pending.ready = true;
+        startNext(project);
+    }
+
+    private synchronized void startNext(Object project) {
+        ProjectBuilds builds = this.projects.get(project);
+        if (builds.running != null) return;
+
+        if (builds.pending == null || !builds.pending.ready) {
+            if (builds.pending == null) this.projects.remove(project);
+            return;
+        }
+
+        Request request = builds.pending;
+        Build build = new Build(request.name);
+        builds.pending = null;
+        builds.running = build;
+
+        this.builders.execute(() -> run(project, request, build));
+    }
+
+    private void run(Object project, Request request, Build build) {
+        long start = System.nanoTime();
+        long latency = TimeUnit.NANOSECONDS.toMillis(start - request.requested);
+        LOGGER.info("Starting " + request.name + " after waiting " + latency + "ms");
+
+        try {
+            request.task.run(build);
+        } catch (Exception e) {
+            LOGGER.error("Error while running " + request.name, e);
+        } finally {
+            long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            LOGGER.info((build.isCancelled() ? "Stopped stale " : "Finished ") + request.name + " in " + duration + "ms");
+
+            synchronized (this) {
+                this.lastLatency = latency;
+                this.lastDuration = duration;
+                this.projects.get(project).running = null;
+                startNext(project);
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Gets the amount of builds waiting to start, either for their debounce delay or for another build to finish.
+     *
+     * @return The amount of waiting builds
+     */
+    public synchronized int getQueueDepth() {
+        return (int) this.projects.values().stream().filter(builds -> builds.pending != null).count();
+    }
+
+    /**
+     * Gets how long the last build to finish waited between being requested and starting.
+     *
+     * @return The latency in milliseconds
+     */
+    public synchronized long getLastLatency() {
+        return this.lastLatency;
+    }
+
+    /**
+     * Gets how long the last build to finish took to run.
+     *
+     * @return The duration in milliseconds
+     */
+    public synchronized long getLastDuration() {
+        return this.lastDuration;
+    }
+
+    public interface BuildTask {
+        void run(Build build) throws Exception;
+
+        /**
+         * Combines this waiting build with a newer request for the same project, which only builds once. By default
+         * only the newer request is built.
+         *
+         * @param newer The newer request
+         * @return The build to run for both requests
+         */
+        default BuildTask coalesce(BuildTask newer) {
+            return newer;
+        }
+    }
+
+    /**
+     * A build that's running, which builds check between their stages to stop early if a newer build was requested.
+     */
+    public static class Build {
+        private final String name;
+        private volatile boolean cancelled;
+
+        private Build(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Gets if a newer build of the same project has been requested, meaning this one no longer needs to finish.
+         *
+         * @return If the build is stale
+         */
+        public boolean isCancelled() {
+            return this.cancelled;
+        }
+    }
+
+    private static class ProjectBuilds {
+        private Build running;
+        private Request pending;
+        private ScheduledFuture<?> debounce;
+        private int generation;
+    }
+
+    private static class Request {
+        private final long requested;
+        private String name;
+        private BuildTask task;
+        private boolean ready;
+
+        private Request(long requested) {
+            this.requested = requested;
+        }
+    }
+}
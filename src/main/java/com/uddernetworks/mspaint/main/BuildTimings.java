@@ -0,0 +1,58 @@
+package com.uddernetworks.mspaint.main;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records how long each stage of a build took, in the order the stages finished. Stages of a build can run at the same
+ * time, so recording is safe from any thread.
+ */
+public class BuildTimings {
+
+    private final Map<String, Long> stages = new LinkedHashMap<>();
+
+    /**
+     * Records the time of a stage, replacing any earlier time of the same stage.
+     *
+     * @param stage The name of the stage
+     * @param millis How long the stage took in milliseconds
+     */
+    public synchronized void record(String stage, long millis) {
+        this.stages.put(stage, millis);
+    }
+
+    /**
+     * Gets the recorded stages and their times.
+     *
+     * @return A copy of the stages to their milliseconds, in the order they finished
+     */
+    public synchronized Map<String, Long> getStages() {
+        return new LinkedHashMap<>(this.stages);
+    }
+
+    /**
+     * Gets the recorded stages as a JSON object, such as {@code {"index":120,"compile":800}}.
+     *
+     * @return The JSON object
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        this.stages.forEach((stage, millis) -> {
+            if (json.length() > 1) json.append(',');
+            json.append('"').append(stage).append("\":").append(millis);
+        });
+
+        return json.append('}').toString();
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder string = new StringBuilder();
+        this.stages.forEach((stage, millis) -> {
+            if (string.length() > 0) string.append(", ");
+            string.append(stage).append(' ').append(millis).append("ms");
+        });
+
+        return string.toString();
+    }
+}
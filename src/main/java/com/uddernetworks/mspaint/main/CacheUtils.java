@@ -1,30 +1,206 @@
 package com.uddernetworks.mspaint.main;
 
+import com.uddernetworks.mspaint.project.PPFProject;
 import com.uddernetworks.mspaint.project.ProjectManager;
+import com.uddernetworks.mspaint.settings.Setting;
+import com.uddernetworks.mspaint.settings.SettingsManager;
 import org.ocpsoft.prettytime.PrettyTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Date;
 
 public class CacheUtils {
 
-    public static final File GLOBAL_CACHE = new File(MainGUI.APP_DATA, "global_cache");
+    private static Logger LOGGER = LoggerFactory.getLogger(CacheUtils.class);
+
+    public static final File GLOBAL_CACHE = new File(Environment.APP_DATA, "global_cache");
     private static final PrettyTime prettyTime = new PrettyTime();
 
+    private static final long HASH_PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long HASH_PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+
     /**
-     * Gets the cache .json file for the given image file.
+     * Gets the cache file for the given image file. Cache files are named after the hash of the image's decoded
+     * pixels and the current OCR database version, so identical images share one cache regardless of their name or
+     * location, and only changing an image's contents or retraining the OCR will cause a rescan.
      *
      * @param file The image file to get the cache file
      * @param internal If the file is an internal file, or an arbitrary external file
-     * @return The .json cache file of the given file
+     * @return The cache file of the given file. May return null if the image could not be read, or if there is
+     * no location to store internal caches
      */
     public static File getCacheFor(File file, boolean internal) {
+        File parent = getCacheLocation(internal);
+        if (parent == null) return null;
+        String hash = getContentHash(file);
+        return hash == null ? null : new File(parent, hash + "_cache.bin");
+    }
+
+    /**
+     * Gets the cache file for the given, already decoded image.
+     *
+     * @param image The image to get the cache file
+     * @param internal If the file is an internal file, or an arbitrary external file
+     * @return The cache file of the given image. May return null if there is no location to store internal caches
+     */
+    public static File getCacheFor(BufferedImage image, boolean internal) {
+        File parent = getCacheLocation(internal);
+        return parent == null ? null : new File(parent, getContentHash(image) + "_cache.bin");
+    }
+
+    /**
+     * Gets the cache file for the given image file, the same as {@link #getCacheFor(File, boolean)}. If there is
+     * no cache file in the requested location but the other (Internal or global) location has a cache for an identical
+     * image, it is copied over so it can be reused without rescanning. Legacy JSON caches named after the image are
+     * moved to the new cache file so they can be migrated by {@link com.uddernetworks.mspaint.ocr.ScannedImageCache}.
+     *
+     * @param file The image file to get the cache file
+     * @param internal If the file is an internal file, or an arbitrary external file
+     * @return The cache file of the given file. May return null if the image could not be read, or if there is
+     * no location to store internal caches
+     */
+    public static File resolveCacheFor(File file, boolean internal) {
+        return resolveCacheFor(file, readImage(file), internal);
+    }
+
+    /**
+     * Gets the cache file for the given image file the same as {@link #resolveCacheFor(File, boolean)}, hashing the
+     * given already decoded image instead of reading the file again.
+     *
+     * @param file The image file to get the cache file
+     * @param image The decoded image of the file
+     * @param internal If the file is an internal file, or an arbitrary external file
+     * @return The cache file of the given file. May return null if the image is null, or if there is no location to
+     * store internal caches
+     */
+    public static File resolveCacheFor(File file, BufferedImage image, boolean internal) {
+        File parent = getCacheLocation(internal);
+        if (parent == null || image == null) return null;
+        String hash = getContentHash(image);
+
+        File cacheFile = new File(parent, hash + "_cache.bin");
+        if (cacheFile.isFile()) return cacheFile;
+
+        if (migrateLegacyCache(file, parent, cacheFile)) return cacheFile;
+
+        File otherParent = getCacheLocation(!internal);
+        File otherCache = otherParent == null ? null : new File(otherParent, hash + "_cache.bin");
+        if (otherCache != null && otherCache.isFile()) {
+            try {
+                parent.mkdirs();
+                Files.copy(otherCache.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                LOGGER.info("Reusing cache of an identical image for " + file.getName());
+            } catch (IOException e) {
+                LOGGER.warn("Couldn't copy cache " + otherCache.getAbsolutePath(), e);
+                return otherCache;
+            }
+        }
+
+        return cacheFile;
+    }
+
+    /**
+     * Moves the legacy JSON cache of the given image, which older versions named after the image file, to the given
+     * content keyed cache file. It's converted to the binary format when it's next read. Legacy caches older than
+     * their image were made of an earlier version of it, so they're deleted instead.
+     *
+     * @param file The image file
+     * @param parent The directory the legacy cache would be in
+     * @param cacheFile The content keyed cache file to move the legacy cache to
+     * @return If a legacy cache was moved to the cache file
+     */
+    private static boolean migrateLegacyCache(File file, File parent, File cacheFile) {
         String name = file.getName();
-        String nameStripped = name.substring(0, name.length() - 4);
-        File parent = internal ? ProjectManager.getPPFProject().getObjectLocation() : GLOBAL_CACHE;
-        return new File(parent, nameStripped + "_cache.json");
+        if (name.length() <= 4) return false;
+        File legacyCache = new File(parent, name.substring(0, name.length() - 4) + "_cache.json");
+        if (!legacyCache.isFile()) return false;
+
+        if (legacyCache.length() > 0 && legacyCache.lastModified() >= file.lastModified() && legacyCache.renameTo(cacheFile)) {
+            LOGGER.info("Migrating legacy cache of " + file.getName());
+            return true;
+        }
+
+        if (!legacyCache.delete()) LOGGER.warn("Couldn't delete legacy cache " + legacyCache.getAbsolutePath());
+        return false;
+    }
+
+    /**
+     * Gets the directory caches are stored in.
+     *
+     * @param internal If the project's cache directory should be returned, or the global one
+     * @return The cache directory. May return null if internal caches are requested and there is no project, or the
+     * project has no cache directory set
+     */
+    public static File getCacheLocation(boolean internal) {
+        if (!internal) return GLOBAL_CACHE;
+        PPFProject ppfProject = ProjectManager.getPPFProject();
+        return ppfProject == null ? null : ppfProject.getObjectLocation();
+    }
+
+    /**
+     * Hashes the decoded ARGB pixels of the given image along with its dimensions and the current OCR database
+     * version. Only the pixels are hashed, so differences in the image's encoding or metadata, or its modification
+     * time, do not affect the hash.
+     *
+     * @param file The image file to hash
+     * @return The hash as a 16 character hex string, or null if the image could not be read
+     */
+    public static String getContentHash(File file) {
+        BufferedImage image = readImage(file);
+        return image == null ? null : getContentHash(image);
+    }
+
+    /**
+     * Decodes the given image file, so it can be hashed and its cache read without being decoded again.
+     *
+     * @param file The image file to read
+     * @return The decoded image, or null if the image could not be read
+     */
+    public static BufferedImage readImage(File file) {
+        try {
+            return ImageIO.read(file);
+        } catch (IOException e) {
+            LOGGER.error("Couldn't read image " + file.getAbsolutePath() + " for hashing", e);
+            return null;
+        }
+    }
+
+    /**
+     * Hashes the given decoded image, the same as {@link #getContentHash(File)}.
+     *
+     * @param image The image to hash
+     * @return The hash as a 16 character hex string
+     */
+    public static String getContentHash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] row = new int[width];
+
+        long hash = mix(mix(mix(HASH_PRIME_2, SettingsManager.getSetting(Setting.DATABASE_VERSION, Integer.class, 0)), width), height);
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int pixel : row) {
+                hash = mix(hash, pixel);
+            }
+        }
+
+        hash ^= hash >>> 33;
+        hash *= HASH_PRIME_2;
+        hash ^= hash >>> 29;
+        return String.format("%016x", hash);
+    }
+
+    private static long mix(long hash, int value) {
+        return Long.rotateLeft(hash ^ (value * HASH_PRIME_2), 31) * HASH_PRIME_1;
     }
 
     /**
@@ -35,9 +211,21 @@ public class CacheUtils {
      * @return The time in milliseconds the file was cached last. May return -1 if the cache file is not found
      */
     public static long getLastCached(File file) {
-        File cacheFile = getCacheFor(file, true);
-        if (!cacheFile.isFile()) cacheFile = getCacheFor(file, false);
-        return cacheFile.isFile() ? cacheFile.lastModified() : -1;
+        BufferedImage image = readImage(file);
+        return image == null ? -1 : getLastCached(image);
+    }
+
+    /**
+     * Gets the time in milliseconds when the given decoded image was last cached, the same as
+     * {@link #getLastCached(File)}.
+     *
+     * @param image The image to check the cache status
+     * @return The time in milliseconds the image was cached last. May return -1 if the cache file is not found
+     */
+    public static long getLastCached(BufferedImage image) {
+        File cacheFile = getCacheFor(image, true);
+        if (cacheFile == null || !cacheFile.isFile()) cacheFile = getCacheFor(image, false);
+        return cacheFile != null && cacheFile.isFile() ? cacheFile.lastModified() : -1;
     }
 
     /**
@@ -45,10 +233,11 @@ public class CacheUtils {
      *
      * @param file The image file to check the cache status
      * @param internal If the file is an internal file, or an arbitrary external file
-     * @return The time in milliseconds the file was cached last
+     * @return The time in milliseconds the file was cached last. May return -1 if the cache file is not found
      */
     public static long getLastCached(File file, boolean internal) {
-        return getCacheFor(file, internal).lastModified();
+        File cacheFile = getCacheFor(file, internal);
+        return cacheFile != null && cacheFile.isFile() ? cacheFile.lastModified() : -1;
     }
 
     /**
@@ -61,10 +250,19 @@ public class CacheUtils {
      * internal or external cache found for the given file
      */
     public static String getLastCachedFormatted(File file) {
-        File cacheFile = getCacheFor(file, true);
-        if (!cacheFile.isFile()) cacheFile = getCacheFor(file, false);
-        if (!cacheFile.isFile()) return "No cache found";
-        return prettyTime.format(Date.from(LocalDateTime.now().minusSeconds((System.currentTimeMillis() - cacheFile.lastModified()) / 1000).atZone(ZoneId.systemDefault()).toInstant()));
+        return formatCacheTime(getLastCached(file));
+    }
+
+    /**
+     * Gets the formatted time and date when the given decoded image was last cached, the same as
+     * {@link #getLastCachedFormatted(File)}.
+     *
+     * @param image The image to check the cache status
+     * @return The formatted time since the image was last cached. May return "No cache found" if there was no
+     * internal or external cache found for the given image
+     */
+    public static String getLastCachedFormatted(BufferedImage image) {
+        return formatCacheTime(getLastCached(image));
     }
 
     /**
@@ -73,10 +271,14 @@ public class CacheUtils {
      *
      * @param file The image file to check the cache status
      * @param internal If the file is an internal file, or an arbitrary external file
-     * @return The formatted time since the file was last cached
+     * @return The formatted time since the file was last cached. May return "No cache found" if there was no cache found
      */
     public static String getLastCachedFormatted(File file, boolean internal) {
-        long time = getCacheFor(file, internal).lastModified();
+        return formatCacheTime(getLastCached(file, internal));
+    }
+
+    private static String formatCacheTime(long time) {
+        if (time == -1) return "No cache found";
         return prettyTime.format(Date.from(LocalDateTime.now().minusSeconds((System.currentTimeMillis() - time) / 1000).atZone(ZoneId.systemDefault()).toInstant()));
     }
 
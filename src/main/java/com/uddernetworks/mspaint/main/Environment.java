@@ -0,0 +1,20 @@
+package com.uddernetworks.mspaint.main;
+
+import java.io.File;
+
+/**
+ * Holds where the IDE keeps its files and if it's running without a GUI. This is kept out of {@link MainGUI} so code
+ * that runs headless, like {@link HeadlessBuild}, never loads JavaFX.
+ */
+public class Environment {
+
+    /**
+     * If the IDE is running without a GUI, in which case nothing should use {@link MainGUI}.
+     */
+    public static boolean HEADLESS = false;
+
+    /**
+     * The folder the IDE's settings, caches and logs are kept in.
+     */
+    public static File APP_DATA = new File(System.getenv("LocalAppData"), "MSPaintIDE");
+}
@@ -0,0 +1,158 @@
+package com.uddernetworks.mspaint.main;
+
+import com.uddernetworks.mspaint.code.ImageClass;
+import com.uddernetworks.mspaint.code.languages.Language;
+import com.uddernetworks.mspaint.code.languages.LanguageError;
+import com.uddernetworks.mspaint.project.PPFProject;
+import com.uddernetworks.mspaint.project.ProjectManager;
+import com.uddernetworks.mspaint.settings.Setting;
+import com.uddernetworks.mspaint.settings.SettingsManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a project from the command line without starting JavaFX, so projects can be built on machines without a
+ * display, like build servers. The project is indexed, highlighted, compiled and optionally executed exactly like the
+ * IDE does, and once it's done a single line of JSON with how long each stage took is printed, such as:
+ * <pre>
+ * {"project":"Example","language":"Java","threads":4,"success":true,"errors":0,"stages":{"index":812,"highlight":230,"compile":1403,"export":310,"write_images":96},"total":2311}
+ * </pre>
+ * The process exits with 0 if the build succeeded, 1 if it failed to build and 2 if the code had errors.
+ */
+public class HeadlessBuild {
+
+    private static Logger LOGGER;
+
+    private static final String USAGE = "Usage: java -cp MSPaintIDE.jar " + HeadlessBuild.class.getCanonicalName() + " <project.ppf> [--threads <count>] [--execute] [--timings <file>]";
+
+    public static void main(String[] args) {
+        File projectFile = null;
+        File timingsFile = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean execute = false;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        if (threads < 1) throw new IllegalArgumentException("The thread count must be at least 1");
+                        break;
+                    case "--execute":
+                        execute = true;
+                        break;
+                    case "--timings":
+                        timingsFile = new File(args[++i]);
+                        break;
+                    default:
+                        if (args[i].startsWith("--") || projectFile != null) throw new IllegalArgumentException("Unknown argument: " + args[i]);
+                        projectFile = new File(args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println(e instanceof ArrayIndexOutOfBoundsException ? "Missing a value for " + args[args.length - 1] : e.getMessage());
+            projectFile = null;
+        }
+
+        if (projectFile == null || !projectFile.getName().endsWith(".ppf")) {
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        }
+
+        if (!projectFile.isFile()) {
+            System.err.println("No project found at " + projectFile.getAbsolutePath());
+            System.exit(1);
+            return;
+        }
+
+        Environment.HEADLESS = true;
+        if (System.getenv("LocalAppData") == null) Environment.APP_DATA = new File(System.getProperty("user.home"), ".mspaintide");
+        System.setProperty("logPath", new File(Environment.APP_DATA, "log").getAbsolutePath());
+        LOGGER = LoggerFactory.getLogger(HeadlessBuild.class);
+
+        try {
+            System.exit(build(projectFile, threads, execute, timingsFile));
+        } catch (IOException | InterruptedException e) {
+            LOGGER.error("Error while building " + projectFile.getAbsolutePath(), e);
+            System.exit(1);
+        }
+    }
+
+    private static int build(File projectFile, int threads, boolean execute, File timingsFile) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        BuildTimings timings = new BuildTimings();
+
+        Main main = new Main();
+        main.headlessStart();
+        main.loadLanguages();
+
+        SettingsManager.overrideSetting(Setting.INDEX_PARALLELISM, threads);
+        SettingsManager.overrideSetting(Setting.PNG_WRITER_THREADS, threads);
+
+        PPFProject ppfProject = ProjectManager.readProject(projectFile);
+        Language language = main.getLanguageManager().getEnabledLanguages()
+                .stream()
+                .filter(enabled -> enabled.getClass().getCanonicalName().equals(ppfProject.getLanguage()))
+                .findFirst()
+                .orElse(null);
+
+        Map<ImageClass, List<LanguageError>> errors = null;
+        if (language == null) {
+            LOGGER.error("The language " + ppfProject.getLanguage() + " isn't available, or this system doesn't meet its requirements");
+        } else {
+            main.setCurrentLanguage(language);
+
+            LOGGER.info("Building " + ppfProject.getName() + " on " + threads + " threads");
+            errors = main.build(new BuildContext(ppfProject, language, execute || language.isInterpreted()), () -> false, timings);
+
+            // The jar is written in the background, and exiting before it's done could leave it truncated
+            long exportStart = System.nanoTime();
+            language.awaitExport();
+            timings.record("export", (System.nanoTime() - exportStart) / 1_000_000);
+
+            long writeStart = System.nanoTime();
+            PNGWriter.awaitPending();
+            timings.record("write_images", (System.nanoTime() - writeStart) / 1_000_000);
+        }
+
+        int errorCount = errors == null ? 0 : errors.values().stream().mapToInt(List::size).sum();
+        String json = "{\"project\":" + quote(ppfProject.getName()) +
+                ",\"language\":" + (language == null ? "null" : quote(language.getName())) +
+                ",\"threads\":" + threads +
+                ",\"success\":" + (errors != null && errorCount == 0) +
+                ",\"errors\":" + errorCount +
+                ",\"stages\":" + timings.toJson() +
+                ",\"total\":" + (System.nanoTime() - start) / 1_000_000 + "}";
+
+        System.out.println(json);
+        if (timingsFile != null) Files.write(timingsFile.toPath(), (json + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+
+        if (errors == null) return 1;
+        return errorCount == 0 ? 0 : 2;
+    }
+
+    private static String quote(String string) {
+        if (string == null) return "null";
+
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char cha : string.toCharArray()) {
+            if (cha == '"' || cha == '\\') {
+                quoted.append('\\').append(cha);
+            } else if (cha < ' ') {
+                quoted.append(String.format("\\u%04x", (int) cha));
+            } else {
+                quoted.append(cha);
+            }
+        }
+
+        return quoted.append('"').toString();
+    }
+}
@@ -2,31 +2,31 @@ package com.uddernetworks.mspaint.main;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 
 import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
 
 public class ImageUtil {
 
+    private static final int WHITE = 0xFFFFFFFF;
+
     public static BufferedImage blackAndWhite(BufferedImage image) {
-        BufferedImage wImage = new BufferedImage(image.getWidth(), image.getHeight(), TYPE_INT_ARGB);
-        for (int y = 0; y < image.getHeight(); y++) {
-            for (int x = 0; x < image.getWidth(); x++) {
-                int rgba = image.getRGB(x, y);
-                Color col = new Color(rgba, true);
-                int r = col.getRed();
-                int g = col.getGreen();
-                int b = col.getBlue();
-                int alpha = col.getAlpha();
-
-                if (shouldBeBlack(r, g, b)) {
-                    Color newColor = new Color(0, 0, 0, alpha);
-                    wImage.setRGB(x, y, newColor.getRGB());
-                } else {
-                    Color newColor = new Color(255, 255, 255, alpha);
-                    wImage.setRGB(x, y, newColor.getRGB());
-                }
-            }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage wImage = new BufferedImage(width, height, TYPE_INT_ARGB);
+
+        int[] pixels = getPixels(image);
+        int[] output = getPixels(wImage);
+
+        for (int i = 0; i < pixels.length; i++) {
+            int rgba = pixels[i];
+            int alpha = rgba & 0xFF000000;
+
+            output[i] = shouldBeBlack((rgba >> 16) & 0xFF, (rgba >> 8) & 0xFF, rgba & 0xFF) ? alpha : alpha | 0xFFFFFF;
         }
 
         return wImage;
@@ -39,63 +39,92 @@ public class ImageUtil {
 
     public static boolean equals(BufferedImage image1, BufferedImage image2, List<Point> ignoring) {
         if (image1.getWidth() != image2.getWidth() || image1.getHeight() != image2.getHeight()) return false;
-        for (int y = 0; y < image1.getHeight(); y++) {
-            for (int x = 0; x < image1.getWidth(); x++) {
-                if (checkingPoint(ignoring, x, y)) {
-                    if (image1.getRGB(x, y) != image2.getRGB(x, y)) {
-                        return false;
-                    }
-                }
-            }
+        if (ignoring == null || ignoring.isEmpty()) return equals(image1, image2);
+
+        int width = image1.getWidth();
+        int[] pixels1 = getPixels(image1);
+        int[] pixels2 = getPixels(image2);
+        BitSet ignoreMask = getIgnoreMask(ignoring, width, image1.getHeight());
+
+        // Compares the runs of pixels between ignored points in bulk
+        int from = 0;
+        for (int ignored = ignoreMask.nextSetBit(0); ignored != -1; ignored = ignoreMask.nextSetBit(ignored + 1)) {
+            if (!Arrays.equals(pixels1, from, ignored, pixels2, from, ignored)) return false;
+            from = ignored + 1;
         }
-        return true;
+
+        return Arrays.equals(pixels1, from, pixels1.length, pixels2, from, pixels2.length);
     }
 
     // Sub image   Searching
     public static boolean equals(BufferedImage image1, BufferedImage image2) {
         if (image1.getWidth() != image2.getWidth() || image1.getHeight() != image2.getHeight()) return false;
-        for (int y = 0; y < image1.getHeight(); y++) {
-            for (int x = 0; x < image1.getWidth(); x++) {
-                if (image1.getRGB(x, y) != image2.getRGB(x, y)) {
-                    return false;
-                }
-            }
-        }
-        return true;
+        return Arrays.equals(getPixels(image1), getPixels(image2));
     }
 
     // Returns 1 for exact match, 0 for none matching
     public static double getDifferenceBetween(BufferedImage image1, BufferedImage image2) {
         if (image1.getWidth() != image2.getWidth() || image1.getHeight() != image2.getHeight()) return 0;
-        double totalPixels = image1.getWidth() * image2.getHeight();
-        double same = 0;
+        int[] pixels1 = getPixels(image1);
+        int[] pixels2 = getPixels(image2);
+        double totalPixels = pixels1.length;
+        int same = 0;
 
-        for (int y = 0; y < image1.getHeight(); y++) {
-            for (int x = 0; x < image1.getWidth(); x++) {
-                if (image1.getRGB(x, y) == image2.getRGB(x, y)) same++;
-            }
+        for (int i = 0; i < pixels1.length; i++) {
+            if (pixels1[i] == pixels2[i]) same++;
         }
 
         return same / totalPixels;
     }
 
-    private static boolean checkingPoint(List<Point> points, int x, int y) {
-        return points == null || points.stream().noneMatch(point -> point.getX() == x && point.getY() == y);
-    }
-
     public static int getWidth(BufferedImage image) {
+        int imageWidth = image.getWidth();
+        int[] pixels = getPixels(image);
+        boolean[] hasBlack = new boolean[imageWidth];
         int width = 0;
-        int black = new Color(255, 255, 255, 255).getRGB();
 
-        for (int x = 0; x < image.getWidth(); x++) {
-            boolean hasBlack = false;
-            for (int y = 0; y < image.getHeight(); y++) {
-                if (image.getRGB(x, y) == black) hasBlack = true;
+        for (int rowStart = 0; rowStart < pixels.length; rowStart += imageWidth) {
+            for (int x = 0; x < imageWidth; x++) {
+                if (!hasBlack[x] && pixels[rowStart + x] == WHITE) {
+                    hasBlack[x] = true;
+                    width++;
+                }
             }
-
-            if (hasBlack) width++;
         }
 
         return width;
     }
+
+    /**
+     * Gets the ARGB pixels of the given image in row-major order. For {@link BufferedImage#TYPE_INT_ARGB} images
+     * backed by their own {@link DataBufferInt} this is the image's own backing array, and writing to it will modify
+     * the image. Any other image is converted with a single bulk {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)}.
+     *
+     * @param image The image to get the pixels of
+     * @return The ARGB pixels of the image
+     */
+    public static int[] getPixels(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Raster raster = image.getRaster();
+
+        if (image.getType() == TYPE_INT_ARGB
+                && raster.getDataBuffer() instanceof DataBufferInt
+                && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0) {
+            int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+            if (data.length == width * height) return data;
+        }
+
+        return image.getRGB(0, 0, width, height, null, 0, width);
+    }
+
+    private static BitSet getIgnoreMask(List<Point> points, int width, int height) {
+        BitSet mask = new BitSet(width * height);
+        for (Point point : points) {
+            if (point.x >= 0 && point.x < width && point.y >= 0 && point.y < height) mask.set(point.y * width + point.x);
+        }
+
+        return mask;
+    }
 }
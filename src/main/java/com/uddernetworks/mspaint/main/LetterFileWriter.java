@@ -8,7 +8,11 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class LetterFileWriter {
@@ -30,6 +34,21 @@ public class LetterFileWriter {
     }
 
     public void writeToFile() throws IOException {
+        render();
+        if (writeFile != null) PNGWriter.writeNow(image, writeFile, PNGWriter.Compression.DEFAULT);
+    }
+
+    /**
+     * Renders the image and queues it to be written to the file on the {@link PNGWriter}'s background threads.
+     *
+     * @return The {@link Future} of the written file
+     */
+    public Future<File> queueWriteToFile() {
+        render();
+        return PNGWriter.write(image, writeFile);
+    }
+
+    private void render() {
         AtomicInteger width = new AtomicInteger(this.image.getWidth());
         AtomicInteger height = new AtomicInteger(this.image.getHeight());
         scannedImage.getGrid().values()
@@ -41,40 +60,67 @@ public class LetterFileWriter {
                 });
 
         image = new BufferedImage(width.get(), height.get(), BufferedImage.TYPE_INT_ARGB);
-        background(Color.WHITE);
-
-        scannedImage.getGrid().values().forEach(line -> {
-            line.forEach(imageLetter -> {
-                if (imageLetter.getLetter() != ' ') writeLetterToFile(image, imageLetter);
-            });
-        });
+        int[] pixels = ImageUtil.getPixels(image);
+        Arrays.fill(pixels, Color.WHITE.getRGB());
 
-        if (writeFile != null) ImageIO.write(image, "png", writeFile);
+        // Each group of lines covers its own range of rows, so they can all be drawn at once
+        getDisjointLines().parallelStream().forEach(lines -> lines.forEach(line -> line.forEach(imageLetter -> {
+            if (imageLetter.getLetter() != ' ') writeLetterToFile(pixels, image.getWidth(), image.getHeight(), imageLetter);
+        })));
     }
 
     public BufferedImage getImage() {
         return image;
     }
 
-    private void writeLetterToFile(BufferedImage image, ImageLetter imageLetter) {
+    /**
+     * Groups the lines of the {@link ScannedImage} so that no two groups have letters on the same row of pixels. Lines
+     * that overlap, such as ones with descenders reaching into the next line, are kept together in their grid order.
+     *
+     * @return The groups of lines
+     */
+    private List<List<List<ImageLetter>>> getDisjointLines() {
+        List<List<List<ImageLetter>>> groups = new ArrayList<>();
+        List<List<ImageLetter>> group = new ArrayList<>();
+        int groupBottom = Integer.MIN_VALUE;
+
+        for (List<ImageLetter> line : scannedImage.getGrid().values()) {
+            if (line.isEmpty()) continue;
+            int top = line.stream().mapToInt(ImageLetter::getY).min().getAsInt();
+            int bottom = line.stream().mapToInt(imageLetter -> imageLetter.getY() + imageLetter.getHeight() + 1).max().getAsInt();
+
+            if (top >= groupBottom && !group.isEmpty()) {
+                groups.add(group);
+                group = new ArrayList<>();
+            }
+
+            group.add(line);
+            groupBottom = Math.max(groupBottom, bottom);
+        }
+
+        if (!group.isEmpty()) groups.add(group);
+        return groups;
+    }
+
+    private void writeLetterToFile(int[] pixels, int imageWidth, int imageHeight, ImageLetter imageLetter) {
         imageLetter.getData(Color.class).ifPresent(colorData -> {
             int color = colorData.getRGB();
             boolean[][] data = imageLetter.getValues();
             if (data == null) return;
 
-            for (int y = 0; y < imageLetter.getHeight() + 1; y++) {
-                for (int x = 0; x < imageLetter.getWidth(); x++) {
-                    if (data[y][x]) image.setRGB(imageLetter.getX() + x, imageLetter.getY() + y, color);
+            int letterX = imageLetter.getX();
+            int letterY = imageLetter.getY();
+            int rows = Math.min(imageLetter.getHeight() + 1, data.length);
+
+            for (int y = Math.max(0, -letterY); y < rows && letterY + y < imageHeight; y++) {
+                boolean[] row = data[y];
+                int rowStart = (letterY + y) * imageWidth + letterX;
+                int columns = Math.min(Math.min(imageLetter.getWidth(), row.length), imageWidth - letterX);
+
+                for (int x = Math.max(0, -letterX); x < columns; x++) {
+                    if (row[x]) pixels[rowStart + x] = color;
                 }
             }
         });
     }
-
-    private void background(Color color) {
-        for (int y = 0; y < this.image.getHeight(); y++) {
-            for (int x = 0; x < this.image.getWidth(); x++) {
-                this.image.setRGB(x, y, color.getRGB());
-            }
-        }
-    }
 }
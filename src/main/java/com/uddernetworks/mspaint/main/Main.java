@@ -11,6 +11,7 @@ import com.uddernetworks.mspaint.code.languages.brainfuck.BrainfuckLanguage;
 import com.uddernetworks.mspaint.code.languages.java.JavaLanguage;
 import com.uddernetworks.mspaint.code.languages.python.PythonLanguage;
 import com.uddernetworks.mspaint.imagestreams.ImageOutputStream;
+import com.uddernetworks.mspaint.imagestreams.OutputRouter;
 import com.uddernetworks.mspaint.painthook.InjectionManager;
 import com.uddernetworks.mspaint.project.PPFProject;
 import com.uddernetworks.mspaint.project.ProjectManager;
@@ -25,9 +26,18 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 public class Main {
 
@@ -38,13 +48,17 @@ public class Main {
 
     private MainGUI mainGUI;
 
-    private List<ImageClass> imageClasses = new ArrayList<>();
-
     private LanguageManager languageManager = new LanguageManager();
     private Language currentLanguage;
     private DatabaseManager databaseManager;
     private RunningCodeManager runningCodeManager;
     private OCRHandle ocrHandle;
+    private BuildScheduler buildScheduler = new BuildScheduler();
+    private ExecutorService stageExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "Build Stage");
+        thread.setDaemon(true);
+        return thread;
+    });
     private boolean usingInternal;
 
     public void start(MainGUI mainGUI) throws IOException, URISyntaxException {
@@ -56,13 +70,7 @@ public class Main {
         this.mainGUI.setDarkTheme(SettingsManager.getSetting(Setting.DARK_THEME, Boolean.class));
         this.mainGUI.updateTheme();
 
-        Splash.setStatus("Adding languages...");
-
-        languageManager.addLanguage(new JavaLanguage());
-        languageManager.addLanguage(new BrainfuckLanguage());
-        languageManager.addLanguage(new PythonLanguage());
-
-        languageManager.initializeLanguages();
+        loadLanguages();
         mainGUI.addLanguages(languageManager.getEnabledLanguages());
 
         this.runningCodeManager = new GeneralRunningCodeManager(this);
@@ -72,7 +80,7 @@ public class Main {
 
     public void headlessStart() throws IOException {
         Splash.setStatus("Loading settings...");
-        SettingsManager.initialize(new File(MainGUI.APP_DATA, "options.ini"));
+        SettingsManager.initialize(new File(Environment.APP_DATA, "options.ini"));
 
         Splash.setStatus("Loading database...");
         SettingsManager.onChangeSetting(Setting.DATABASE_USE_INTERNAL, useInternal -> {
@@ -110,6 +118,23 @@ public class Main {
         }, Boolean.class, true);
     }
 
+    /**
+     * Adds every language and enables the ones the system meets the requirements of.
+     */
+    public void loadLanguages() {
+        Splash.setStatus("Adding languages...");
+
+        languageManager.addLanguage(new JavaLanguage());
+        languageManager.addLanguage(new BrainfuckLanguage());
+        languageManager.addLanguage(new PythonLanguage());
+
+        languageManager.initializeLanguages();
+    }
+
+    public BuildScheduler getBuildScheduler() {
+        return this.buildScheduler;
+    }
+
     public void setCurrentLanguage(Language language) {
         this.currentLanguage = language;
     }
@@ -118,89 +143,145 @@ public class Main {
         return this.currentLanguage;
     }
 
-    private boolean optionsNotFilled() {
-        PPFProject ppfProject = ProjectManager.getPPFProject();
-        return ppfProject.getInputLocation() == null || ppfProject.getClassLocation() == null || (getCurrentLanguage().getOutputFileExtension() != null && ppfProject.getCompilerOutput() == null);
+    private boolean optionsNotFilled(BuildContext context) {
+        PPFProject ppfProject = context.getProject();
+        return ppfProject.getInputLocation() == null || ppfProject.getClassLocation() == null || (context.getLanguage().getOutputFileExtension() != null && ppfProject.getCompilerOutput() == null);
     }
 
-    public int indexAll(boolean useCaches, boolean saveCaches) {
-        if (optionsNotFilled()) {
+    /**
+     * Scans every image of the build's project.
+     *
+     * @param context The context of the build
+     * @return The context with the scanned images, or null if the images couldn't be scanned
+     */
+    public BuildContext indexAll(BuildContext context) {
+        if (optionsNotFilled(context)) {
             LOGGER.error("Please select files for all options");
-            mainGUI.setHaveError();
-            return -1;
+            if (!Environment.HEADLESS) mainGUI.setHaveError();
+            return null;
         }
 
         LOGGER.info("Scanning all images...");
         long start = System.currentTimeMillis();
 
-        mainGUI.setStatusText(null);
+        if (!Environment.HEADLESS) mainGUI.setStatusText(null);
 
-        File inputImage = ProjectManager.getPPFProject().getInputLocation();
+        PPFProject ppfProject = context.getProject();
+        File inputImage = ppfProject.getInputLocation();
 
+        List<File> imageFiles;
         if (inputImage.isDirectory()) {
             LOGGER.info("Found directory: " + inputImage.getAbsolutePath());
-            for (File imageFile : getFilesFromDirectory(inputImage, this.currentLanguage.getFileExtensions(), "png")) {
-                LOGGER.info("Adding non directory: " + imageFile.getAbsolutePath());
-                imageClasses.add(new ImageClass(imageFile, mainGUI, true, useCaches, saveCaches));
-            }
+            imageFiles = getFilesFromDirectory(inputImage, context.getLanguage().getFileExtensions(), "png");
         } else {
-            LOGGER.info("Adding non directory: " + inputImage.getAbsolutePath());
-            imageClasses.add(new ImageClass(inputImage, mainGUI, true, useCaches, saveCaches));
+            imageFiles = Collections.singletonList(inputImage);
         }
 
-        mainGUI.setStatusText(null);
+        List<ImageClass> scanned = scanAll(imageFiles, ppfProject.isUseCaches(), ppfProject.isSaveCaches());
+
+        if (!Environment.HEADLESS) mainGUI.setStatusText(null);
+
+        if (scanned == null) {
+            if (!Environment.HEADLESS) mainGUI.setHaveError();
+            return null;
+        }
 
         LOGGER.info("Finished scanning all images in " + (System.currentTimeMillis() - start) + "ms");
-        return 1;
+        return context.withImageClasses(scanned);
+    }
+
+    /**
+     * Scans the given images on a bounded pool of {@link Setting#INDEX_PARALLELISM} threads. The returned
+     * {@link ImageClass}es are in the same order as the given files, regardless of what order the scans finish in.
+     *
+     * @param imageFiles The image files to scan
+     * @param useCaches If caches should be used
+     * @param saveCaches If caches should be saved
+     * @return The scanned images in the order of the given files, or null if any of the scans failed
+     */
+    private List<ImageClass> scanAll(List<File> imageFiles, boolean useCaches, boolean saveCaches) {
+        int total = imageFiles.size();
+        int parallelism = Math.max(1, Math.min(total, SettingsManager.getSetting(Setting.INDEX_PARALLELISM, Integer.class, 1)));
+        AtomicInteger completed = new AtomicInteger();
+
+        LOGGER.info("Scanning " + total + " images on " + parallelism + " threads");
+
+        // Parallel scans all reporting their own status would fight over the progress bar, so they only report through
+        // the loading progress of the whole scan
+        MainGUI imageGUI = parallelism > 1 ? null : mainGUI;
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<ImageClass>> futures = new ArrayList<>(total);
+            for (File imageFile : imageFiles) {
+                futures.add(executor.submit(() -> {
+                    LOGGER.info("Adding non directory: " + imageFile.getAbsolutePath());
+                    ImageClass imageClass = new ImageClass(imageFile, imageGUI, this, true, useCaches, saveCaches);
+                    if (!Environment.HEADLESS) mainGUI.updateLoading(completed.incrementAndGet(), total);
+                    return imageClass;
+                }));
+            }
+
+            List<ImageClass> scanned = new ArrayList<>(total);
+            for (Future<ImageClass> future : futures) {
+                scanned.add(future.get());
+            }
+
+            return scanned;
+        } catch (ExecutionException e) {
+            LOGGER.error("Error while scanning images", e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
-    public void highlightAll() throws IOException {
-        if (optionsNotFilled()) {
+    public void highlightAll(BuildContext context) throws IOException {
+        if (optionsNotFilled(context)) {
             LOGGER.error("Please select files for all options");
-            mainGUI.setHaveError();
+            if (!Environment.HEADLESS) mainGUI.setHaveError();
             return;
         }
 
-        File highlightedFile = ProjectManager.getPPFProject().getHighlightLocation();
+        File highlightedFile = context.getProject().getHighlightLocation();
 
         if (highlightedFile != null && !highlightedFile.isDirectory()) highlightedFile.mkdirs();
 
         if (highlightedFile == null || !highlightedFile.isDirectory()) {
             LOGGER.error("No highlighted file directory found!");
-            mainGUI.setHaveError();
+            if (!Environment.HEADLESS) mainGUI.setHaveError();
             return;
         }
 
         LOGGER.info("Scanning all images...");
-        mainGUI.setStatusText("Highlighting...");
-        mainGUI.setIndeterminate(true);
         long start = System.currentTimeMillis();
 
-        for (ImageClass imageClass : imageClasses) {
-            imageClass.highlight(highlightedFile);
+        for (ImageClass imageClass : context.getImageClasses()) {
+            imageClass.highlight(highlightedFile, context.getLanguage());
         }
 
-        mainGUI.setIndeterminate(false);
-        mainGUI.setStatusText(null);
-
         LOGGER.info("Finished highlighting all images in " + (System.currentTimeMillis() - start) + "ms");
     }
 
 
-    public void compile(boolean execute) throws IOException {
+    /**
+     * Compiles, or interprets, the build's images, and executes them if the build should.
+     *
+     * @param context The context of the build, with its images indexed
+     * @return The errors found in every image
+     * @throws IOException If an IO Exception occurs
+     */
+    public Map<ImageClass, List<LanguageError>> compile(BuildContext context) throws IOException {
+        PPFProject ppfProject = context.getProject();
+        Language language = context.getLanguage();
         long start = System.currentTimeMillis();
 
-        if (getCurrentLanguage().isInterpreted()) {
-            LOGGER.info("Interpreting...");
-            mainGUI.setStatusText("Interpreting...");
-        } else {
-            LOGGER.info("Compiling...");
-            mainGUI.setStatusText("Compiling...");
-        }
-
-        File libraryFile = ProjectManager.getPPFProject().getLibraryLocation();
+        LOGGER.info(language.isInterpreted() ? "Interpreting..." : "Compiling...");
 
-        mainGUI.setIndeterminate(true);
+        File libraryFile = ppfProject.getLibraryLocation();
 
         List<File> libFiles = new ArrayList<>();
         if (libraryFile != null) {
@@ -213,24 +294,23 @@ public class Main {
             }
         }
 
-        ImageOutputStream imageOutputStream = new ImageOutputStream(ProjectManager.getPPFProject().getAppOutput(), 500);
-        ImageOutputStream compilerOutputStream = new ImageOutputStream(ProjectManager.getPPFProject().getCompilerOutput(), 500);
-        Map<ImageClass, List<LanguageError>> errors = null;
+        ImageOutputStream imageOutputStream = new ImageOutputStream(ppfProject.getAppOutput(), 500);
+        ImageOutputStream compilerOutputStream = new ImageOutputStream(ppfProject.getCompilerOutput(), 500);
+        if (!Environment.HEADLESS) imageOutputStream.addListener(mainGUI::appendOutput);
 
-        try {
-            errors = getCurrentLanguage().compileAndExecute(imageClasses, ProjectManager.getPPFProject().getJarFile(), ProjectManager.getPPFProject().getOtherLocation(), ProjectManager.getPPFProject().getClassLocation(), mainGUI, imageOutputStream, compilerOutputStream, libFiles, execute);
+        Map<ImageClass, List<LanguageError>> errors = null;
 
-            LOGGER.info("Highlighting Angry Squiggles...");
-            mainGUI.setStatusText("Highlighting Angry Squiggles...");
+        // Only this build's program output goes to its image, even with other builds running at the same time
+        OutputRouter.redirect(imageOutputStream.getPrintStream());
 
-            for (ImageClass imageClass : errors.keySet()) {
-                AngrySquiggleHighlighter highlighter = new AngrySquiggleHighlighter(mainGUI.getMain(), imageClass, 3, imageClass.getHighlightedFile(), imageClass.getScannedImage(), errors.get(imageClass));
-                highlighter.highlightAngrySquiggles();
-            }
+        try {
+            // The language isn't given the GUI, as the build shows one status for the stages running alongside this
+            errors = language.compileAndExecute(context.getImageClasses(), ppfProject.getJarFile(), ppfProject.getOtherLocation(), ppfProject.getClassLocation(), null, imageOutputStream, compilerOutputStream, libFiles, context.isExecute());
 
-        } catch (TranscoderException | ExecutionException | InterruptedException e) {
-            e.printStackTrace();
+            return errors;
         } finally {
+            OutputRouter.restore();
+
             Optional<Map.Entry<ImageClass, List<LanguageError>>> firstEntry = errors != null ? errors.entrySet().stream().findFirst() : Optional.empty();
             String append = "";
             if (firstEntry.isPresent()) {
@@ -245,18 +325,131 @@ public class Main {
                 append += ". See compiler output image for details";
             }
 
-            LOGGER.info("Finished " + (getCurrentLanguage().isInterpreted() ? "interpreting" : "compiling") + " in " + (System.currentTimeMillis() - start) + "ms" + append);
+            LOGGER.info("Finished " + (language.isInterpreted() ? "interpreting" : "compiling") + " in " + (System.currentTimeMillis() - start) + "ms" + append);
 
             LOGGER.info("Saving output images...");
-            mainGUI.setStatusText("Saving output images...");
 
             imageOutputStream.saveImage();
             compilerOutputStream.saveImage();
+        }
+    }
+
+    /**
+     * Draws angry squiggles under the errors in the build's highlighted images.
+     *
+     * @param context The context of the build, with its images highlighted
+     * @param errors The errors found in every image
+     */
+    public void highlightAngrySquiggles(BuildContext context, Map<ImageClass, List<LanguageError>> errors) throws IOException, TranscoderException, ExecutionException, InterruptedException {
+        if (errors.isEmpty()) return;
+
+        LOGGER.info("Highlighting Angry Squiggles...");
+        if (!Environment.HEADLESS) mainGUI.setStatusText("Highlighting Angry Squiggles...");
+        long start = System.currentTimeMillis();
+
+        for (ImageClass imageClass : errors.keySet()) {
+            AngrySquiggleHighlighter highlighter = new AngrySquiggleHighlighter(this, imageClass, 3, imageClass.getHighlightedFile(), imageClass.getScannedImage(), errors.get(imageClass));
+            highlighter.highlightAngrySquiggles();
+        }
+
+        if (!Environment.HEADLESS) mainGUI.setStatusText(null);
+        LOGGER.info("Finished highlighting angry squiggles in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Runs every stage of a build. Once the images are indexed, compiling only needs their text, so it runs at the same
+     * time as syntax highlighting, and the highlighted images are written while both are going. Angry squiggles are
+     * drawn on the highlighted images, so they wait for both to finish.
+     *
+     * @param context The context of the build
+     * @param cancelled Checked between stages, to stop the build early once it's no longer needed
+     * @param timings Where how long each stage took is recorded
+     * @return The errors found in every image, or null if the build failed or was stopped early
+     * @throws IOException If an IO Exception occurs
+     * @throws InterruptedException If the thread is interrupted while waiting for the stages
+     */
+    public Map<ImageClass, List<LanguageError>> build(BuildContext context, BooleanSupplier cancelled, BuildTimings timings) throws IOException, InterruptedException {
+        PPFProject ppfProject = context.getProject();
+
+        long indexStart = System.nanoTime();
+        BuildContext indexed = indexAll(context);
+        timings.record("index", millisSince(indexStart));
+        if (indexed == null || cancelled.getAsBoolean()) return null;
+
+        boolean highlight = ppfProject.isSyntaxHighlight();
+        boolean compile = ppfProject.isCompile() || indexed.getLanguage().isInterpreted();
+
+        // The stages run at the same time, so only the build itself shows their status and progress
+        if (!Environment.HEADLESS) {
+            mainGUI.setStatusText(getStageStatus(highlight, compile, indexed.getLanguage().isInterpreted()));
+            mainGUI.setIndeterminate(true);
+        }
+
+        CompletableFuture<Void> highlighted = !highlight ? CompletableFuture.completedFuture(null) : CompletableFuture.runAsync(() -> {
+            long start = System.nanoTime();
+            try {
+                highlightAll(indexed);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                timings.record("highlight", millisSince(start));
+            }
+        }, this.stageExecutor);
+
+        CompletableFuture<Map<ImageClass, List<LanguageError>>> compiled = !compile ? CompletableFuture.completedFuture(Collections.emptyMap()) : CompletableFuture.supplyAsync(() -> {
+            if (cancelled.getAsBoolean()) return Collections.emptyMap();
+
+            long start = System.nanoTime();
+            try {
+                return compile(indexed);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                timings.record(indexed.getLanguage().isInterpreted() ? "interpret" : "compile", millisSince(start));
+            }
+        }, this.stageExecutor);
+
+        // Squiggles are drawn on the highlighted images, so without highlighting there's nothing to draw them on
+        CompletableFuture<Map<ImageClass, List<LanguageError>>> squiggled = highlighted.thenCombine(compiled, (ignored, errors) -> errors).thenApplyAsync(errors -> {
+            if (!highlight || cancelled.getAsBoolean()) return errors;
+
+            long start = System.nanoTime();
+            try {
+                highlightAngrySquiggles(indexed, errors);
+                return errors;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (TranscoderException | ExecutionException | InterruptedException e) {
+                throw new CompletionException(e);
+            } finally {
+                timings.record("squiggles", millisSince(start));
+            }
+        }, this.stageExecutor);
 
-            mainGUI.setStatusText(null);
+        try {
+            Map<ImageClass, List<LanguageError>> errors = squiggled.get();
+            return cancelled.getAsBoolean() ? null : errors;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException) e.getCause()).getCause();
+            LOGGER.error("Error while building", e.getCause());
+            return null;
+        } finally {
+            if (!Environment.HEADLESS) {
+                mainGUI.setIndeterminate(false);
+                mainGUI.setStatusText(null);
+            }
         }
+    }
+
+    private String getStageStatus(boolean highlight, boolean compile, boolean interpreted) {
+        String compiling = interpreted ? "Interpreting" : "Compiling";
+        if (highlight && compile) return "Highlighting and " + compiling.toLowerCase() + "...";
+        if (highlight) return "Highlighting...";
+        return compile ? compiling + "..." : null;
+    }
 
-        imageClasses.clear();
+    private static long millisSince(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
     }
 
     public static List<File> getFilesFromDirectory(File directory, String extension) {
@@ -307,7 +500,7 @@ public class Main {
         return databaseManager;
     }
 
-    public OCRHandle getOCRHandle() {
+    public synchronized OCRHandle getOCRHandle() {
         if (this.ocrHandle == null) this.ocrHandle = new OCRHandle(this.databaseManager);
         return ocrHandle;
     }
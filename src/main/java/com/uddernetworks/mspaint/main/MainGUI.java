@@ -56,6 +56,8 @@ public class MainGUI extends Application implements Initializable {
 
     private static Logger LOGGER;
 
+    private static final int MAX_PENDING_OUTPUT = 1024 * 1024;
+
     @FXML
     private TextField inputName;
     @FXML
@@ -147,18 +149,17 @@ public class MainGUI extends Application implements Initializable {
     private Main main;
     private Stage primaryStage;
     private boolean darkTheme = false;
-    public static boolean HEADLESS = false;
     private boolean remoteURLVisible = true;
     private GitController gitController;
     private AtomicBoolean initialized = new AtomicBoolean();
+    private final StringBuilder pendingOutput = new StringBuilder();
+    private final AtomicBoolean outputDrainQueued = new AtomicBoolean();
     private static File initialProject = null;
     private ThemeManager themeManager;
 
     private Map<String, Image> cachedTaksbarIcons = new HashMap<>();
     private Map<String, ImageView> cachedImageViews = new HashMap<>();
 
-    public static File APP_DATA = new File(System.getenv("LocalAppData"), "MSPaintIDE");
-
     private ObservableList<Language> languages = FXCollections.observableArrayList();
 
     public MainGUI() throws IOException, URISyntaxException, ClassNotFoundException, UnsupportedLookAndFeelException, InstantiationException, IllegalAccessException {
@@ -172,7 +173,7 @@ public class MainGUI extends Application implements Initializable {
     }
 
     public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
-        System.setProperty("logPath", APP_DATA.getAbsolutePath() + "\\log");
+        System.setProperty("logPath", Environment.APP_DATA.getAbsolutePath() + "\\log");
         LOGGER = LoggerFactory.getLogger(MainGUI.class);
 
         if (!System.getProperty("os.name").toLowerCase().contains("windows")) {
@@ -193,7 +194,7 @@ public class MainGUI extends Application implements Initializable {
                 initialProject = new File(args[0]);
                 if (!initialProject.isFile()) initialProject = null;
             } else {
-                HEADLESS = true;
+                Environment.HEADLESS = true;
                 new TextEditorManager(args[0]);
                 return;
             }
@@ -291,6 +292,37 @@ public class MainGUI extends Application implements Initializable {
         Platform.runLater(() -> statusText.setText(text));
     }
 
+    /**
+     * Appends text to the output console without waiting for the JavaFX thread. Text is collected until the JavaFX
+     * thread gets to it, and then all of it is appended at once, so a program printing quickly only costs a single
+     * append per frame. If the JavaFX thread falls far behind, only the latest {@link #MAX_PENDING_OUTPUT} chars are
+     * kept, as the output images still get everything.
+     *
+     * @param text The text to append
+     */
+    public void appendOutput(String text) {
+        synchronized (this.pendingOutput) {
+            this.pendingOutput.append(text);
+            int overflow = this.pendingOutput.length() - MAX_PENDING_OUTPUT;
+            if (overflow > 0) this.pendingOutput.delete(0, overflow);
+        }
+
+        if (this.outputDrainQueued.compareAndSet(false, true)) Platform.runLater(this::drainOutput);
+    }
+
+    private void drainOutput() {
+        // Cleared before taking the text, so anything appended after this queues another drain
+        this.outputDrainQueued.set(false);
+
+        String text;
+        synchronized (this.pendingOutput) {
+            text = this.pendingOutput.toString();
+            this.pendingOutput.setLength(0);
+        }
+
+        if (!text.isEmpty()) output.appendText(text);
+    }
+
     public GitController getGitController() {
         return this.gitController;
     }
@@ -373,16 +405,52 @@ public class MainGUI extends Application implements Initializable {
         return this.primaryStage.getScene().getStylesheets();
     }
 
+    /**
+     * Requests a full build of the open project through the {@link BuildScheduler}, so that requests made while a build
+     * is running replace it instead of running alongside it.
+     *
+     * @param execute If the program should be executed after it's compiled
+     */
     public void fullCompile(boolean execute) {
+        BuildContext context = new BuildContext(ProjectManager.getPPFProject(), getCurrentLanguage(), execute);
+        this.main.getBuildScheduler().schedule(context.getProject(), execute ? "run" : "build", new CompileTask(context));
+    }
+
+    /**
+     * A full build of the project. When coalesced with a newer build, the program is still executed if either of them
+     * would have executed it, so clicking run and then build before it starts doesn't drop the run.
+     */
+    private class CompileTask implements BuildScheduler.BuildTask {
+        private final BuildContext context;
+
+        private CompileTask(BuildContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public void run(BuildScheduler.Build build) {
+            fullCompile(build, this.context);
+        }
+
+        @Override
+        public BuildScheduler.BuildTask coalesce(BuildScheduler.BuildTask newer) {
+            if (!this.context.isExecute() || !(newer instanceof CompileTask)) return newer;
+
+            BuildContext newerContext = ((CompileTask) newer).context;
+            if (newerContext.isExecute()) return newer;
+            return new CompileTask(new BuildContext(newerContext.getProject(), newerContext.getLanguage(), true));
+        }
+    }
+
+    private void fullCompile(BuildScheduler.Build build, BuildContext context) {
         try {
-            PPFProject ppfProject = ProjectManager.getPPFProject();
-            if (getCurrentLanguage() == null) {
+            if (context.getLanguage() == null) {
                 setHaveError();
                 LOGGER.error("No language selected!");
                 return;
             }
 
-            if (!getCurrentLanguage().meetsRequirements()) {
+            if (!context.getLanguage().meetsRequirements()) {
                 setHaveError();
                 LOGGER.error("You somehow selected a language that your\n" +
                         "system doesn't have the proper requirements for!");
@@ -393,29 +461,33 @@ public class MainGUI extends Application implements Initializable {
             progress.getStyleClass().remove("progressError");
 
             long start = System.currentTimeMillis();
-            if (main.indexAll(ppfProject.isUseCaches(), ppfProject.isSaveCaches()) == -1) return;
+            BuildTimings timings = new BuildTimings();
+            main.build(context, build::isCancelled, timings);
+            if (build.isCancelled()) return;
 
-            if (ppfProject.isSyntaxHighlight()) {
-                main.highlightAll();
-            }
+            setStatusText("Exporting...");
+            long exportStart = System.currentTimeMillis();
+            context.getLanguage().awaitExport();
+            timings.record("export", System.currentTimeMillis() - exportStart);
 
-            if (ppfProject.isCompile() || getCurrentLanguage().isInterpreted()) {
-                main.compile(execute);
-            }
+            setStatusText("Writing images...");
+            long writeStart = System.currentTimeMillis();
+            PNGWriter.awaitPending();
+            timings.record("write_images", System.currentTimeMillis() - writeStart);
 
             setStatusText("");
             updateLoading(0, 1);
 
-            LOGGER.info("Finished everything in " + (System.currentTimeMillis() - start) + "ms");
+            LOGGER.info("Finished everything in " + (System.currentTimeMillis() - start) + "ms (" + timings + ")");
 
-        } catch (IOException e) {
+        } catch (IOException | InterruptedException e) {
             e.printStackTrace();
         }
     }
 
     @FXML
     private void startScan(ActionEvent event) {
-        new Thread(() -> fullCompile(ProjectManager.getPPFProject().isExecute() || getCurrentLanguage().isInterpreted())).start();
+        fullCompile(ProjectManager.getPPFProject().isExecute() || getCurrentLanguage().isInterpreted());
     }
 
     public void setHaveError() {
@@ -593,7 +665,7 @@ public class MainGUI extends Application implements Initializable {
             setHaveError();
         });
 
-        GUIConsoleAppender.activate(output);
+        GUIConsoleAppender.activate(text -> Platform.runLater(() -> output.appendText(text)));
 
         invertColors.setOnAction(event -> {
             SettingsManager.setSetting(Setting.DARK_THEME, this.darkTheme = !this.darkTheme);
@@ -0,0 +1,197 @@
+package com.uddernetworks.mspaint.main;
+
+import com.uddernetworks.mspaint.settings.Setting;
+import com.uddernetworks.mspaint.settings.SettingsManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encodes PNG images on a pool of background threads, so the build can go on while earlier images are still being
+ * compressed and flushed. Writes are queued on a bounded queue, and once it's full whoever is queueing an image blocks
+ * until a worker catches up.
+ * <p>
+ * If an image is queued for a file that already has a write waiting, only the newest one is written. An image must not
+ * be modified after it has been queued, unless a newer write to the same file is queued afterwards.
+ */
+public class PNGWriter {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(PNGWriter.class);
+
+    private static final int QUEUE_SIZE = 16;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static ThreadPoolExecutor executor;
+    private static final Map<File, Object> latestWrites = new ConcurrentHashMap<>();
+    private static final Object[] fileLocks = new Object[64];
+    private static final Set<Future<File>> pending = ConcurrentHashMap.newKeySet();
+
+    static {
+        // A fixed set of locks shared between files, so there's no lock to clean up for every file ever written
+        for (int i = 0; i < fileLocks.length; i++) fileLocks[i] = new Object();
+    }
+
+    public enum Compression {
+        /**
+         * The deflate level set by {@link Setting#PNG_COMPRESSION_LEVEL}, used for images the user will look at
+         */
+        DEFAULT,
+
+        /**
+         * The fastest deflate level, used for intermediate images that are only read back by the program
+         */
+        FAST
+    }
+
+    /**
+     * Queues the given image to be written to the given file with the {@link Compression#DEFAULT} compression.
+     *
+     * @param image The image to write
+     * @param file The file to write the image to
+     * @return The {@link Future} of the written file
+     */
+    public static Future<File> write(BufferedImage image, File file) {
+        return write(image, file, Compression.DEFAULT);
+    }
+
+    /**
+     * Queues the given image to be written to the given file.
+     *
+     * @param image The image to write
+     * @param file The file to write the image to
+     * @param compression The compression to write the image with
+     * @return The {@link Future} of the written file
+     */
+    public static Future<File> write(BufferedImage image, File file, Compression compression) {
+        File key = file.getAbsoluteFile();
+        Object token = new Object();
+        latestWrites.put(key, token);
+
+        FutureTask<File> task = new FutureTask<>(() -> {
+            try {
+                // Writes to the same file are done one at a time, and skipped if a newer one has been queued
+                synchronized (fileLocks[(key.hashCode() & 0x7FFFFFFF) % fileLocks.length]) {
+                    if (latestWrites.get(key) != token) return file;
+
+                    try {
+                        writeNow(image, file, compression);
+                    } finally {
+                        latestWrites.remove(key, token);
+                    }
+                }
+
+                return file;
+            } catch (IOException e) {
+                LOGGER.error("Couldn't write image " + file.getAbsolutePath(), e);
+                throw e;
+            }
+        }) {
+            @Override
+            protected void done() {
+                pending.remove(this);
+            }
+        };
+
+        pending.add(task);
+        getExecutor().execute(task);
+        return task;
+    }
+
+    /**
+     * Writes the given image to the given file on the current thread. The image is written to a temporary file that is
+     * then moved over the given file, so nothing ever reads a partially written image.
+     *
+     * @param image The image to write
+     * @param file The file to write the image to
+     * @param compression The compression to write the image with
+     * @throws IOException If an IO Exception occurs
+     */
+    public static void writeNow(BufferedImage image, File file, Compression compression) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        Path tempFile = Files.createTempFile(parent.toPath(), file.getName(), ".tmp");
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile), BUFFER_SIZE);
+             ImageOutputStream imageOut = new MemoryCacheImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                // The PNG writer maps a quality of 1 to no compression, and 0 to the maximum deflate level of 9
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality((9 - getLevel(compression)) / 9F);
+            }
+
+            writer.setOutput(imageOut);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        } finally {
+            writer.dispose();
+        }
+
+        Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Blocks until every image queued so far has been written.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public static void awaitPending() throws InterruptedException {
+        for (Future<File> future : new ArrayList<>(pending)) {
+            try {
+                future.get();
+            } catch (ExecutionException ignored) {
+                // Already logged by the task
+            }
+        }
+    }
+
+    private static int getLevel(Compression compression) {
+        if (compression == Compression.FAST) return 1;
+        int level = SettingsManager.getSetting(Setting.PNG_COMPRESSION_LEVEL, Integer.class, 4);
+        return Math.max(0, Math.min(9, level));
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor != null) return executor;
+
+        int threads = Math.max(1, SettingsManager.getSetting(Setting.PNG_WRITER_THREADS, Integer.class, 1));
+        AtomicInteger threadCount = new AtomicInteger();
+
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(QUEUE_SIZE), runnable -> {
+            Thread thread = new Thread(runnable, "PNG Writer " + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, (runnable, pool) -> {
+            try {
+                pool.getQueue().put(runnable);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting to queue an image", e);
+            }
+        });
+
+        return executor;
+    }
+}
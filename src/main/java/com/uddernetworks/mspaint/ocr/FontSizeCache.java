@@ -0,0 +1,56 @@
+package com.uddernetworks.mspaint.ocr;
+
+import com.uddernetworks.mspaint.settings.Setting;
+import com.uddernetworks.mspaint.settings.SettingsManager;
+import com.uddernetworks.newocr.OCRHandle;
+import com.uddernetworks.newocr.character.ImageLetter;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Caches the font sizes looked up by {@link OCRHandle#getFontSize(ImageLetter)}, which goes to the database every time
+ * it's called. Letters with the same character and dimensions always have the same font size, so sizes are kept in a
+ * bounded least recently used map keyed by those, along with the {@link Setting#DATABASE_VERSION} they were found with.
+ */
+public class FontSizeCache {
+
+    private static final int MAX_SIZE = 1024;
+
+    private static final Map<Long, Integer> fontSizes = Collections.synchronizedMap(new LinkedHashMap<>(64, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+            return size() > MAX_SIZE;
+        }
+    });
+
+    /**
+     * Gets the font size of the given {@link ImageLetter}, only going to the database if a letter with the same
+     * character and dimensions hasn't been looked up before.
+     *
+     * @param ocrHandle The {@link OCRHandle} to look up the font size with
+     * @param imageLetter The {@link ImageLetter} to get the font size of
+     * @return The font size in points
+     * @throws ExecutionException If the lookup failed
+     * @throws InterruptedException If the thread is interrupted while waiting for the lookup
+     */
+    public static int getFontSize(OCRHandle ocrHandle, ImageLetter imageLetter) throws ExecutionException, InterruptedException {
+        long key = getKey(imageLetter);
+        Integer fontSize = fontSizes.get(key);
+        if (fontSize != null) return fontSize;
+
+        fontSize = ocrHandle.getFontSize(imageLetter).get();
+        fontSizes.put(key, fontSize);
+        return fontSize;
+    }
+
+    private static long getKey(ImageLetter imageLetter) {
+        long databaseVersion = SettingsManager.getSetting(Setting.DATABASE_VERSION, Integer.class, 0) & 0xFFFF;
+        return databaseVersion << 48
+                | (long) imageLetter.getLetter() << 32
+                | (imageLetter.getWidth() & 0xFFFFL) << 16
+                | (imageLetter.getHeight() & 0xFFFFL);
+    }
+}
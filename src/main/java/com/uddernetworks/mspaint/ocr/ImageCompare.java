@@ -1,63 +1,61 @@
 package com.uddernetworks.mspaint.ocr;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.InstanceCreator;
-import com.google.gson.JsonParseException;
+import com.uddernetworks.mspaint.main.Environment;
 import com.uddernetworks.mspaint.main.Main;
 import com.uddernetworks.mspaint.main.MainGUI;
 import com.uddernetworks.newocr.ScannedImage;
-import com.uddernetworks.newocr.utils.OCRUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.util.AbstractMap;
-import java.util.Map;
 
 public class ImageCompare {
 
-    public ScannedImage getText(File inputImage, File cacheFile, MainGUI mainGUI, Main main, boolean readFromCache, boolean saveCaches) {
-        ScannedImage scannedImage;
+    private static Logger LOGGER = LoggerFactory.getLogger(ImageCompare.class);
+
+    /**
+     * Gets the text of an image, from its cache if it has one or otherwise by scanning it.
+     *
+     * @param inputImage The image file
+     * @param image The decoded image file, given to cached scans so they don't read it again. May be null
+     * @param cacheFile The cache file of the image, or null if it has none
+     * @param mainGUI The {@link MainGUI} to show the status on, or null to not show it
+     * @param main The {@link Main} to scan with
+     * @param readFromCache If the cache should be read
+     * @param saveCaches If the scan should be saved to the cache
+     * @return The scanned image, or null if an IO Exception occurs
+     */
+    public ScannedImage getText(File inputImage, BufferedImage image, File cacheFile, MainGUI mainGUI, Main main, boolean readFromCache, boolean saveCaches) {
+        ScannedImage scannedImage = null;
 
         try {
-            if (readFromCache && cacheFile != null && !cacheFile.isFile()) {
-                try {
-                    cacheFile.getParentFile().mkdirs();
-                    readFromCache = !cacheFile.createNewFile();
-                } catch (IOException ignored) {
-                    readFromCache = false;
-                }
+            // Cache files are keyed by the image's contents, so any non-empty cache is up to date
+            if (readFromCache && cacheFile != null && cacheFile.isFile() && cacheFile.length() > 0) {
+                scannedImage = ScannedImageCache.read(inputImage, image, cacheFile);
+                if (scannedImage == null) LOGGER.warn("Couldn't use the cache for " + inputImage.getName() + ", rescanning");
             }
 
-            if (!readFromCache) {
-                if (!MainGUI.HEADLESS) mainGUI.setStatusText("Scanning image " + inputImage.getName() + "...");
+            if (scannedImage == null) {
+                // Images scanned in parallel are given no GUI, as their progress is only shown through the loading bar
+                boolean showStatus = !Environment.HEADLESS && mainGUI != null;
+                if (showStatus) mainGUI.setStatusText("Scanning image " + inputImage.getName() + "...");
 
-                if (!MainGUI.HEADLESS) mainGUI.setIndeterminate(true);
+                if (showStatus) mainGUI.setIndeterminate(true);
 
+                // OCRHandle can only scan files, so it decodes the image again even if it's already been decoded
                 scannedImage = main.getOCRHandle().scanImage(inputImage);
 
-                if (saveCaches) {
-                    if (!MainGUI.HEADLESS) {
+                if (saveCaches && cacheFile != null) {
+                    if (showStatus) {
                         mainGUI.setStatusText("Saving to cache file...");
                     }
 
-                    Files.write(cacheFile.toPath(), new Gson().toJson(scannedImage).getBytes());
+                    ScannedImageCache.write(scannedImage, cacheFile);
                 }
 
-                if (!MainGUI.HEADLESS) mainGUI.setIndeterminate(false);
-            } else {
-                try {
-                    GsonBuilder gsonBuilder = new GsonBuilder();
-
-                    gsonBuilder.registerTypeAdapter(Map.Entry.class, (InstanceCreator<Map.Entry>) type -> new AbstractMap.SimpleEntry<>(null, null));
-
-                    scannedImage = gsonBuilder.create().fromJson(new String(Files.readAllBytes(cacheFile.toPath())), ScannedImage.class);
-                } catch (JsonParseException e) {
-                    if (!MainGUI.HEADLESS) mainGUI.setHaveError();
-                    System.err.println("There was a problem reading the cache for " + inputImage.getName() + "! Try resetting caches.");
-                    scannedImage = null;
-                }
+                if (showStatus) mainGUI.setIndeterminate(false);
             }
 
             return scannedImage;
@@ -66,7 +64,7 @@ public class ImageCompare {
             e.printStackTrace();
         }
 
-        return null;
+        return scannedImage;
     }
 
 }
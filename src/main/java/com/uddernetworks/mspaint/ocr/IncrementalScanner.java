@@ -0,0 +1,199 @@
+package com.uddernetworks.mspaint.ocr;
+
+import com.uddernetworks.mspaint.code.ImageClass;
+import com.uddernetworks.mspaint.main.CacheUtils;
+import com.uddernetworks.mspaint.main.PNGWriter;
+import com.uddernetworks.newocr.ScannedImage;
+import com.uddernetworks.newocr.character.ImageLetter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Rescans an {@link ImageClass} after its image has been edited by only running the OCR on the horizontal band of
+ * lines that changed. Every row of the last scanned image is hashed, and on a rescan the rows with differing hashes are
+ * expanded out to the whole lines they touch. That band is cropped out and scanned on its own, and its lines are
+ * spliced into the existing {@link ScannedImage} in place of the old ones.
+ */
+public class IncrementalScanner {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(IncrementalScanner.class);
+
+    // If more than this fraction of the image changed, scanning the whole thing is just as fast
+    private static final double FULL_SCAN_THRESHOLD = 0.5;
+
+    private final ImageClass imageClass;
+    private int width;
+    private long[] rowHashes;
+
+    public IncrementalScanner(ImageClass imageClass) throws IOException {
+        this.imageClass = imageClass;
+        remember(readImage());
+    }
+
+    /**
+     * Rescans the image, only running the OCR on the lines that have changed since the last scan. If the image's
+     * width has changed or most of the image is different, the whole image is rescanned.
+     *
+     * @throws IOException If an IO Exception occurs
+     */
+    public void rescan() throws IOException {
+        final String prefix = "[" + this.imageClass.getInputImage().getName() + "] ";
+        long start = System.currentTimeMillis();
+
+        BufferedImage image = readImage();
+        int height = image.getHeight();
+        ScannedImage scannedImage = this.imageClass.getScannedImage();
+
+        if (scannedImage == null || image.getWidth() != this.width) {
+            LOGGER.info(prefix + "Image dimensions changed, doing a full scan");
+            fullScan(image);
+            return;
+        }
+
+        long[] newHashes = hashRows(image);
+        int commonHeight = Math.min(height, this.rowHashes.length);
+
+        int dirtyStart = -1;
+        int dirtyEnd = -1;
+        for (int y = 0; y < commonHeight; y++) {
+            if (newHashes[y] != this.rowHashes[y]) {
+                if (dirtyStart == -1) dirtyStart = y;
+                dirtyEnd = y + 1;
+            }
+        }
+
+        if (height != this.rowHashes.length) {
+            if (dirtyStart == -1) dirtyStart = commonHeight;
+            dirtyEnd = Math.max(height, this.rowHashes.length);
+        }
+
+        if (dirtyStart == -1) {
+            LOGGER.info(prefix + "No changes found");
+            return;
+        }
+
+        Map<Integer, int[]> lineBounds = new TreeMap<>();
+        scannedImage.getGrid().forEach((y, line) -> {
+            if (line.isEmpty()) return;
+            int lineTop = line.stream().mapToInt(ImageLetter::getY).min().getAsInt();
+            int lineBottom = line.stream().mapToInt(imageLetter -> imageLetter.getY() + imageLetter.getHeight() + 1).max().getAsInt();
+            lineBounds.put(y, new int[] {lineTop, lineBottom});
+        });
+
+        // Grow the dirty rows to cover every line they touch, until no more lines overlap its edges
+        boolean grown = true;
+        while (grown) {
+            grown = false;
+            for (int[] bounds : lineBounds.values()) {
+                if (bounds[0] < dirtyEnd && bounds[1] > dirtyStart && (bounds[0] < dirtyStart || bounds[1] > dirtyEnd)) {
+                    dirtyStart = Math.min(dirtyStart, bounds[0]);
+                    dirtyEnd = Math.max(dirtyEnd, bounds[1]);
+                    grown = true;
+                }
+            }
+        }
+
+        // The band's edges are put in the middle of the gaps between the dirty rows and the untouched lines
+        int bandTop = 0;
+        int bandBottom = height;
+        Map<Integer, List<ImageLetter>> lines = new TreeMap<>();
+        for (Map.Entry<Integer, int[]> entry : lineBounds.entrySet()) {
+            int[] bounds = entry.getValue();
+            if (bounds[1] <= dirtyStart) {
+                bandTop = Math.max(bandTop, bounds[1]);
+            } else if (bounds[0] >= dirtyEnd) {
+                bandBottom = Math.min(bandBottom, bounds[0]);
+            } else {
+                continue;
+            }
+
+            lines.put(entry.getKey(), scannedImage.getGrid().get(entry.getKey()));
+        }
+
+        bandTop = (bandTop + dirtyStart) / 2;
+        bandBottom = Math.min(height, (bandBottom + Math.min(dirtyEnd, height) + 1) / 2);
+
+        if (bandBottom - bandTop > height * FULL_SCAN_THRESHOLD) {
+            LOGGER.info(prefix + "Most of the image changed, doing a full scan");
+            fullScan(image);
+            return;
+        }
+
+        if (bandBottom > bandTop) {
+            final int offset = bandTop;
+            scanBand(image, bandTop, bandBottom).getGrid().forEach((y, line) -> {
+                line.forEach(imageLetter -> imageLetter.setY(imageLetter.getY() + offset));
+                lines.put(y + offset, line);
+            });
+        }
+
+        ScannedImage spliced = new ScannedImage(this.imageClass.getInputImage(), image);
+        lines.forEach(spliced::addLine);
+
+        this.imageClass.setScannedImage(spliced);
+        this.rowHashes = newHashes;
+        saveCache(image, spliced);
+
+        LOGGER.info(prefix + "Rescanned rows " + bandTop + "-" + bandBottom + " in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private ScannedImage scanBand(BufferedImage image, int top, int bottom) throws IOException {
+        File bandFile = Files.createTempFile("band", ".png").toFile();
+        try {
+            PNGWriter.writeNow(image.getSubimage(0, top, image.getWidth(), bottom - top), bandFile, PNGWriter.Compression.FAST);
+            return this.imageClass.getHeadlessMain().getOCRHandle().scanImage(bandFile);
+        } finally {
+            bandFile.delete();
+        }
+    }
+
+    private void fullScan(BufferedImage image) {
+        this.imageClass.scan(image);
+        remember(image);
+    }
+
+    private void saveCache(BufferedImage image, ScannedImage scannedImage) throws IOException {
+        if (!this.imageClass.isSaveCaches()) return;
+        File cacheFile = CacheUtils.getCacheFor(image, this.imageClass.isInternal());
+        if (cacheFile != null) ScannedImageCache.write(scannedImage, cacheFile);
+    }
+
+    private BufferedImage readImage() throws IOException {
+        BufferedImage image = ImageIO.read(this.imageClass.getInputImage());
+        if (image == null) throw new IOException("Couldn't read image " + this.imageClass.getInputImage().getAbsolutePath());
+        return image;
+    }
+
+    private void remember(BufferedImage image) {
+        this.width = image.getWidth();
+        this.rowHashes = hashRows(image);
+    }
+
+    private static long[] hashRows(BufferedImage image) {
+        int width = image.getWidth();
+        int[] row = new int[width];
+        long[] hashes = new long[image.getHeight()];
+
+        for (int y = 0; y < hashes.length; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+
+            long hash = 1125899906842597L;
+            for (int pixel : row) {
+                hash = 31 * hash + pixel;
+            }
+
+            hashes[y] = hash;
+        }
+
+        return hashes;
+    }
+}
@@ -0,0 +1,266 @@
+package com.uddernetworks.mspaint.ocr;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.InstanceCreator;
+import com.google.gson.JsonParseException;
+import com.uddernetworks.newocr.ScannedImage;
+import com.uddernetworks.newocr.character.ImageLetter;
+import com.uddernetworks.newocr.database.DatabaseCharacter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes {@link ScannedImage} caches in a compact binary format. After a header of the magic bytes
+ * <code>MSPC</code> and a version byte, the file holds the amount of lines followed by every line's Y coordinate and
+ * letters. Each letter is its character, position, size and its values grid packed to one bit per pixel. All numbers
+ * are written as varints, with coordinates ZigZag encoded as they may be negative.
+ * <p>
+ * Only what's needed to rebuild the text and highlight it is kept. Letters are read back with a plain
+ * {@link DatabaseCharacter} of their character and no match ratio or segments, the same as letters made by the text
+ * editor, so the database metadata a scan matched them with is lost.
+ * <p>
+ * Counts and sizes are checked against the image's size while reading, so a corrupt cache is treated as missing
+ * instead of allocating huge arrays.
+ * <p>
+ * Caches written as JSON by older versions are still read, and are rewritten in the binary format once read.
+ */
+public class ScannedImageCache {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(ScannedImageCache.class);
+
+    private static final byte[] MAGIC = {'M', 'S', 'P', 'C'};
+    public static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // The bounds for counts and sizes when the image itself isn't known
+    private static final int MAX_DIMENSION = 1 << 15;
+
+    /**
+     * Writes the given {@link ScannedImage} to the given cache file. The file is written to a temporary file first and
+     * then moved over the cache file, so readers never see a partially written cache.
+     *
+     * @param scannedImage The {@link ScannedImage} to write
+     * @param cacheFile The cache file to write to
+     * @throws IOException If an IO Exception occurs
+     */
+    public static void write(ScannedImage scannedImage, File cacheFile) throws IOException {
+        cacheFile.getParentFile().mkdirs();
+        Path tempFile = Files.createTempFile(cacheFile.getParentFile().toPath(), cacheFile.getName(), ".tmp");
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile), BUFFER_SIZE)) {
+            out.write(MAGIC);
+            out.write(VERSION);
+
+            Map<Integer, List<ImageLetter>> grid = scannedImage.getGrid();
+            writeVarInt(out, grid.size());
+            for (Map.Entry<Integer, List<ImageLetter>> line : grid.entrySet()) {
+                writeVarInt(out, zigZag(line.getKey()));
+                writeVarInt(out, line.getValue().size());
+
+                for (ImageLetter imageLetter : line.getValue()) {
+                    writeLetter(out, imageLetter);
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+
+        Files.move(tempFile, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the {@link ScannedImage} from the given cache file. Legacy JSON caches are converted to the binary format
+     * after being read.
+     *
+     * @param inputImage The image the cache belongs to
+     * @param image The decoded image, kept as the {@link ScannedImage}'s original image. May be null
+     * @param cacheFile The cache file to read
+     * @return The cached {@link ScannedImage}, or null if the cache couldn't be read, is corrupt or is of an unsupported
+     * version
+     */
+    public static ScannedImage read(File inputImage, BufferedImage image, File cacheFile) {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(cacheFile.toPath()), BUFFER_SIZE)) {
+            in.mark(MAGIC.length);
+            if (in.read() == '{') {
+                in.reset();
+                return migrateJson(inputImage, cacheFile, in);
+            }
+
+            in.reset();
+            for (byte magic : MAGIC) {
+                if (in.read() != magic) return null;
+            }
+
+            int version = in.read();
+            if (version != VERSION) {
+                LOGGER.info("Ignoring cache of unsupported version " + version + " for " + inputImage.getName());
+                return null;
+            }
+
+            ScannedImage scannedImage = new ScannedImage(inputImage, image);
+            int width = image == null ? MAX_DIMENSION : image.getWidth();
+            int height = image == null ? MAX_DIMENSION : image.getHeight();
+
+            int lineCount = checkSize(readVarInt(in), height, "line count");
+            for (int i = 0; i < lineCount; i++) {
+                int y = unZigZag(readVarInt(in));
+                int letterCount = checkSize(readVarInt(in), width, "letter count");
+
+                List<ImageLetter> line = new ArrayList<>(letterCount);
+                for (int j = 0; j < letterCount; j++) {
+                    line.add(readLetter(in, width, height));
+                }
+
+                scannedImage.addLine(y, line);
+            }
+
+            return scannedImage;
+        } catch (EOFException e) {
+            LOGGER.error("Truncated cache file for " + inputImage.getName());
+            return null;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Couldn't read cache file for " + inputImage.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static ScannedImage migrateJson(File inputImage, File cacheFile, InputStream in) throws IOException {
+        ScannedImage scannedImage;
+
+        try {
+            GsonBuilder gsonBuilder = new GsonBuilder();
+
+            gsonBuilder.registerTypeAdapter(Map.Entry.class, (InstanceCreator<Map.Entry>) type -> new AbstractMap.SimpleEntry<>(null, null));
+
+            scannedImage = gsonBuilder.create().fromJson(new InputStreamReader(in), ScannedImage.class);
+        } catch (JsonParseException e) {
+            LOGGER.error("Couldn't read legacy JSON cache for " + inputImage.getName());
+            return null;
+        }
+
+        if (scannedImage != null) {
+            in.close();
+            write(scannedImage, cacheFile);
+            LOGGER.info("Migrated JSON cache for " + inputImage.getName());
+        }
+
+        return scannedImage;
+    }
+
+    private static void writeLetter(OutputStream out, ImageLetter imageLetter) throws IOException {
+        writeVarInt(out, imageLetter.getLetter());
+        writeVarInt(out, zigZag(imageLetter.getX()));
+        writeVarInt(out, zigZag(imageLetter.getY()));
+        writeVarInt(out, imageLetter.getWidth());
+        writeVarInt(out, imageLetter.getHeight());
+
+        boolean[][] values = imageLetter.getValues();
+        if (values == null) {
+            // Rows are written with 1 added, so 0 is reserved for letters without values, such as spaces
+            writeVarInt(out, 0);
+            return;
+        }
+
+        int rows = values.length;
+        int columns = rows == 0 ? 0 : values[0].length;
+        writeVarInt(out, rows + 1);
+        writeVarInt(out, columns);
+
+        int current = 0;
+        int bit = 0;
+        for (boolean[] row : values) {
+            for (int x = 0; x < columns; x++) {
+                if (row[x]) current |= 1 << bit;
+
+                if (++bit == 8) {
+                    out.write(current);
+                    current = 0;
+                    bit = 0;
+                }
+            }
+        }
+
+        if (bit > 0) out.write(current);
+    }
+
+    private static ImageLetter readLetter(InputStream in, int imageWidth, int imageHeight) throws IOException {
+        char letter = (char) readVarInt(in);
+        int x = unZigZag(readVarInt(in));
+        int y = unZigZag(readVarInt(in));
+        int width = checkSize(readVarInt(in), imageWidth, "letter width");
+        int height = checkSize(readVarInt(in), imageHeight, "letter height");
+
+        ImageLetter imageLetter = new ImageLetter(new DatabaseCharacter(letter), x, y, width, height, -1D, null);
+
+        int rows = readVarInt(in) - 1;
+        if (rows == -1) return imageLetter;
+
+        // A letter's values may be a pixel larger than its size, but never larger than the image
+        checkSize(rows, imageHeight + 1, "letter rows");
+        int columns = checkSize(readVarInt(in), imageWidth + 1, "letter columns");
+        boolean[][] values = new boolean[rows][columns];
+
+        int current = 0;
+        int bit = 8;
+        for (boolean[] row : values) {
+            for (int i = 0; i < columns; i++) {
+                if (bit == 8) {
+                    current = in.read();
+                    if (current == -1) throw new EOFException();
+                    bit = 0;
+                }
+
+                row[i] = (current & (1 << bit++)) != 0;
+            }
+        }
+
+        imageLetter.setValues(values);
+        return imageLetter;
+    }
+
+    private static int checkSize(int value, int max, String name) throws IOException {
+        if (value < 0 || value > max) throw new IOException("Invalid " + name + " " + value);
+        return value;
+    }
+
+    private static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out.write(value);
+    }
+
+    private static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b == -1) throw new EOFException();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+
+        throw new IOException("Malformed varint");
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -3,13 +3,18 @@ package com.uddernetworks.mspaint.painthook;
 import com.uddernetworks.mspaint.gui.window.UserInputWindow;
 import com.uddernetworks.mspaint.main.Main;
 import com.uddernetworks.mspaint.main.MainGUI;
+import com.uddernetworks.mspaint.settings.Setting;
+import com.uddernetworks.mspaint.settings.SettingsManager;
 import org.apache.log4j.Logger;
 
 import java.io.IOException;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import static com.uddernetworks.mspaint.painthook.InjectionManager.ClickType.*;
@@ -21,10 +26,11 @@ public class InjectionManager {
     private Main main;
     private PaintInjector pInject;
 
-    private Executor executor = Executors.newCachedThreadPool();
+    private Map<ClickType, Long> lastDispatched = new EnumMap<>(ClickType.class);
 
     // Yes, I know this is horrible OOP, but JNI is _super_ finicky about this crap and doesn't want non-static objects.
-    private static Queue<ClickType> queue = new ConcurrentLinkedQueue<>();
+    private static BlockingQueue<ClickType> queue = new LinkedBlockingQueue<>();
+    private static Set<ClickType> queued = ConcurrentHashMap.newKeySet();
 
     enum ClickType {
         BUILD(InjectionManager::clickBuild),
@@ -52,20 +58,58 @@ public class InjectionManager {
     }
 
     public void createHooks() {
-        pInject.clickBuild(() -> queue.add(BUILD));
-        pInject.clickRun(() -> queue.add(RUN));
-        pInject.clickStop(() -> queue.add(STOP));
-        pInject.clickCommit(() -> queue.add(COMMIT));
-        pInject.clickPush(() -> queue.add(PUSH));
-        pInject.clickPull(() -> queue.add(PULL));
-
-        executor.execute(() -> {
-            while (true) {
-                var type = queue.poll();
-                if (type == null) continue;
+        pInject.clickBuild(() -> click(BUILD));
+        pInject.clickRun(() -> click(RUN));
+        pInject.clickStop(() -> click(STOP));
+        pInject.clickCommit(() -> click(COMMIT));
+        pInject.clickPush(() -> click(PUSH));
+        pInject.clickPull(() -> click(PULL));
+
+        Thread dispatcher = new Thread(this::dispatchClicks, "Paint Hook Dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Queues a click to be handled, unless the same button is already waiting to be handled.
+     *
+     * @param type The button clicked
+     */
+    private static void click(ClickType type) {
+        if (queued.add(type)) queue.add(type);
+    }
+
+    /**
+     * Handles clicks in the order they came in, parking until there is one. A click of the same button as one handled
+     * within the debounce window is dropped, so a burst of clicks only does its work once.
+     */
+    private void dispatchClicks() {
+        while (true) {
+            ClickType type;
+            try {
+                type = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            queued.remove(type);
+
+            long now = System.nanoTime();
+            long debounce = TimeUnit.MILLISECONDS.toNanos(SettingsManager.getSetting(Setting.INJECT_CLICK_DEBOUNCE, Integer.class, 250));
+            Long last = this.lastDispatched.get(type);
+            if (last != null && now - last < debounce) {
+                LOGGER.info("Ignoring repeated " + type + " click");
+                continue;
+            }
+
+            this.lastDispatched.put(type, now);
+
+            try {
                 type.run(this);
+            } catch (RuntimeException e) {
+                LOGGER.error("Error while handling " + type + " click", e);
             }
-        });
+        }
     }
 
     private void clickBuild() {
@@ -1,6 +1,6 @@
 package com.uddernetworks.mspaint.settings;
 
-import com.uddernetworks.mspaint.main.MainGUI;
+import com.uddernetworks.mspaint.main.Environment;
 
 import java.io.File;
 import java.util.Arrays;
@@ -11,19 +11,27 @@ public enum Setting {
     OPEN_PROJECT("openProject", "", STRING),
     DARK_THEME("darkTheme", true, BOOLEAN),
     DATABASE_USE_INTERNAL("databaseUseInternal", true, BOOLEAN),
-    DATABASE_INTERNAL_LOCATION("databaseInternalLocation", MainGUI.APP_DATA + File.separator + "database", STRING),
+    DATABASE_INTERNAL_LOCATION("databaseInternalLocation", Environment.APP_DATA + File.separator + "database", STRING),
     DATABASE_URL("databaseURL", "", STRING),
     DATABASE_USER("databaseUser", "", STRING),
     DATABASE_PASS("databasePass", "", STRING),
+    DATABASE_VERSION("databaseVersion", 0, INT), // Incremented every time the OCR is trained, to invalidate scan caches
     TRAIN_IMAGE("trainImage", "", STRING),
     OCR_DEBUG("ocrDebug", false, BOOLEAN),
+    INDEX_PARALLELISM("indexParallelism", Runtime.getRuntime().availableProcessors(), INT), // The max amount of images scanned at once
+    PNG_COMPRESSION_LEVEL("pngCompressionLevel", 4, INT), // The deflate level (0-9) of written PNG images
+    PNG_WRITER_THREADS("pngWriterThreads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2), INT), // The amount of PNG images encoded at once
+    SQUIGGLE_DISK_CACHE("squiggleDiskCache", true, BOOLEAN), // If generated angry squiggles should be saved to disk between runs
+    JAVA_EXPORT_CLASSES("javaExportClasses", true, BOOLEAN), // If compiled Java classes are written to the class folder and jar after building
+    OUTPUT_MAX_LINES("outputMaxLines", 5000, INT), // The most lines of program or compiler output drawn before it's truncated
     EDIT_FILE_SIZE("editFileFontSize", 36, INT), // The font size that files are generated in
     TRAIN_LOWER_BOUND("trainGenLowerBound", 20, INT),
     TRAIN_UPPER_BOUND("trainGenUpperBound", 90, INT),
     TASKBAR_ICON("taskbarIcon", "Colored", STRING),
     EXTRA_THEME("extraTheme", "Default", STRING),
     INJECT_AUTO_NEW("injectAutoNew", true, BOOLEAN),
-    INJECT_AUTO_OPEN("injectAutoOpen", true, BOOLEAN);
+    INJECT_AUTO_OPEN("injectAutoOpen", true, BOOLEAN),
+    INJECT_CLICK_DEBOUNCE("injectClickDebounce", 250, INT); // Milliseconds in which repeated clicks of an injected button are ignored
 
     private final String name;
     private Object def;
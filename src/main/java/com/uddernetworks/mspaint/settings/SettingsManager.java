@@ -37,6 +37,17 @@ public class SettingsManager {
         save();
     }
 
+    /**
+     * Sets a setting for only as long as the program is running, without saving it or notifying any listeners. This
+     * is for overriding settings from places without a JavaFX toolkit, like the command line.
+     *
+     * @param setting The setting to override
+     * @param value The value to use for the setting
+     */
+    public static void overrideSetting(Setting setting, Object value) {
+        settings.put(setting, value);
+    }
+
     public static <T> void onChangeSetting(Setting setting, Consumer<T> consumer, Class<T> clazz) {
         onChangeSetting(setting, consumer, clazz, false);
     }
@@ -1,9 +1,11 @@
 package com.uddernetworks.mspaint.texteditor;
 
 import com.uddernetworks.mspaint.code.ImageClass;
+import com.uddernetworks.mspaint.main.Environment;
 import com.uddernetworks.mspaint.main.LetterFileWriter;
 import com.uddernetworks.mspaint.main.Main;
 import com.uddernetworks.mspaint.main.MainGUI;
+import com.uddernetworks.mspaint.ocr.IncrementalScanner;
 import com.uddernetworks.mspaint.settings.Setting;
 import com.uddernetworks.mspaint.settings.SettingsManager;
 import com.uddernetworks.newocr.FontBounds;
@@ -56,7 +58,7 @@ public class TextEditorManager {
     public TextEditorManager(File file, MainGUI mainGUI) throws IOException, InterruptedException, ExecutionException {
         this.originalFile = file.getAbsoluteFile();
 
-        if (MainGUI.HEADLESS) {
+        if (Environment.HEADLESS) {
             this.headlessMain = new Main();
             this.headlessMain.headlessStart();
         } else {
@@ -64,7 +66,7 @@ public class TextEditorManager {
             mainGUI.setIndeterminate(true);
         }
 
-        File backup = new File(MainGUI.APP_DATA, "opened\\backup");
+        File backup = new File(Environment.APP_DATA, "opened\\backup");
         backup.mkdirs();
 
         File backupFile = new File(backup, "original_" + this.originalFile.getName());
@@ -74,6 +76,7 @@ public class TextEditorManager {
         this.imageFile = createImageFile();
 
         this.imageClass = new ImageClass(this.imageFile, mainGUI, this.headlessMain, false, true, true);
+        IncrementalScanner incrementalScanner = new IncrementalScanner(this.imageClass);
 
         (this.savingThread = new Thread(() -> {
             try {
@@ -81,7 +84,6 @@ public class TextEditorManager {
                 try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
                     path.register(watchService, StandardWatchEventKinds.ENTRY_MODIFY);
 
-                    long last = System.currentTimeMillis();
                     while (!stopping.get()) {
                         WatchKey wk = watchService.take();
                         boolean found = false;
@@ -90,10 +92,16 @@ public class TextEditorManager {
                             if (changed.toFile().getName().equals(this.imageFile.getName())) found = true;
                         }
 
-                        if (found && (System.currentTimeMillis() - last) > 250) {
-                            this.imageClass.scan();
-                            Files.write(this.originalFile.toPath(), this.imageClass.getText().getBytes());
-                            last = System.currentTimeMillis();
+                        // Saves in quick succession only rescan once, after the last of them
+                        if (found) {
+                            this.headlessMain.getBuildScheduler().schedule(this.imageFile, "rescan of " + this.imageFile.getName(), 250, build -> {
+                                try {
+                                    incrementalScanner.rescan();
+                                    Files.write(this.originalFile.toPath(), this.imageClass.getText().getBytes());
+                                } catch (IOException e) {
+                                    LOGGER.error("Couldn't rescan " + this.imageFile.getName(), e);
+                                }
+                            });
                         }
 
                         if (!wk.reset()) {
@@ -105,7 +113,7 @@ public class TextEditorManager {
         })).start();
 
         initialProcess();
-        if (!MainGUI.HEADLESS) mainGUI.setIndeterminate(false);
+        if (!Environment.HEADLESS) mainGUI.setIndeterminate(false);
     }
 
     public ScannedImage generateLetterGrid(String text) throws ExecutionException, InterruptedException {
@@ -167,7 +175,7 @@ public class TextEditorManager {
     }
 
     private File createImageFile() throws IOException, ExecutionException, InterruptedException {
-        File tempImage = new File(MainGUI.APP_DATA, "opened\\" + this.originalFile.getName() + ".png");
+        File tempImage = new File(Environment.APP_DATA, "opened\\" + this.originalFile.getName() + ".png");
         tempImage.mkdirs();
 
         String text = new String(Files.readAllBytes(this.originalFile.toPath()));
@@ -211,12 +219,15 @@ public class TextEditorManager {
         savingThread.interrupt();
         savingThread.join();
 
+        // A save right before closing may still be waiting to be rescanned, and needs the image to do so
+        this.headlessMain.getBuildScheduler().flush(this.imageFile);
+
         if (!this.imageFile.delete()) {
             Thread.sleep(3000);
             this.imageFile.delete();
         }
 
-        if (MainGUI.HEADLESS) System.exit(0);
+        if (Environment.HEADLESS) System.exit(0);
     }
 
     // Utility methods